@@ -25,9 +25,9 @@ public class LoggingAspect {
     /**
      * 切入点：所有在ncepusa.distributedcars包及其子包中的public方法
      */
-    @Pointcut("execution(* ncepusa.distributedcars.navigator.message_queue_interaction.ActiveMQListener.readDataFromRedis(String)) || " +
-            "execution(* ncepusa.distributedcars.navigator.message_queue_interaction.ActiveMQListener.generatePath(String)) || " +
-            "execution(* ncepusa.distributedcars.navigator.message_queue_interaction.ActiveMQListener.writePathToRedis(String))")
+    @Pointcut("execution(* ncepusa.distributedcars.navigator.message_queue_interaction.ActiveMQListener.readDataFromRedis(..)) || " +
+            "execution(* ncepusa.distributedcars.navigator.message_queue_interaction.ActiveMQListener.generatePath(..)) || " +
+            "execution(* ncepusa.distributedcars.navigator.message_queue_interaction.ActiveMQListener.writePathToRedis(..))")
     public void applicationPackagePointcut() {
     }
 
@@ -2,14 +2,21 @@ package ncepusa.distributedcars.navigator.algorithm;
 
 import ncepusa.distributedcars.navigator.data_structures.GridMap;
 import ncepusa.distributedcars.navigator.data_structures.GridNode;
+import ncepusa.distributedcars.navigator.data_structures.IndexedMinHeap;
+import ncepusa.distributedcars.navigator.data_structures.LandmarkTable;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.data.geo.Point;
-import org.springframework.data.util.Pair;
 
 import java.util.*;
 
 /**
  * <p>A*算法</p>
+ * <p>开放列表是按格子下标索引的二叉堆，代价变小时原地更新，f值相同时优先扩展h值更小的格子</p>
+ * <p>启发函数取八方向距离和ALT地标下界（见 {@link LandmarkTable}）中的较大值，两者都与移动代价一致，
+ * 沿最短路径f值严格不变，再按h值打破平局，只沿一条最短路径扩展。墙体很长的地图上地标下界能绕过墙体，扩展的格子大幅减少。
+ * 地标距离表在后台构建，障碍物变化后表还没有构建完成时只用八方向距离。
+ * 曼哈顿距离在斜走时高估代价，与地标下界混用会打乱相等的f值，所以不再使用</p>
  *
  * @author 0109
  * @since 2025-05-21
@@ -17,48 +24,57 @@ import java.util.*;
 public class AStar implements PathPlanningStrategy {
     @Override
     public List<Point> planPath(@NotNull GridMap map, @NotNull GridNode start, @NotNull GridNode end) {
-
-        PriorityQueue<GridNode> openList = new PriorityQueue<GridNode>();
-        Set<GridNode> closedList = new HashSet<GridNode>();
-        start.setG(0);
-        start.setH(map.ManhattanDistance(start, end));
-        start.setParent(null);
-        openList.add(start);
+        int startIndex = start.getIndex();
+        int endIndex = end.getIndex();
+        IndexedMinHeap openList = IndexedMinHeap.forCurrentThread(map.getWidth() * map.getHeight());
+        map.resetSearchState();
+        map.setG(startIndex, 0);
+        map.setParent(startIndex, GridMap.NO_PARENT);
+        int[] neighbors = new int[map.getNeighborBufferSize()];
+        LandmarkTable landmarks = map.getLandmarksIfReady();
+        double startH = heuristic(map, landmarks, startIndex, endIndex);
+        openList.push(startIndex, startH, startH);
         while (!openList.isEmpty()) {
-            GridNode current = openList.poll();
-            if (current.equals(end)) {
-                return reconstructPath(current);
+            int current = openList.poll();
+            if (current == endIndex) {
+                return reconstructPath(map, current);
             }
-            closedList.add(current);
-            List<Pair<Point, Point>> neighbors = map.getClusterNeighbors(current);
-            for (int i = 0; i < neighbors.size(); i++) {
-                GridNode neighbor = map.getGridNode(neighbors.get(i).getSecond());
-                if (neighbor.isObstacle() || closedList.contains(neighbor)) continue;
-                double tentativeGCost = current.getG()
-                        + (neighbor.getX() != current.getX() && neighbor.getY() != current.getY() ? Math.sqrt(2) : 1)
-                        + (neighbor.isVisited()? 2 : 0);
-                if (tentativeGCost < neighbor.getG()) {
-                    neighbor.setG(tentativeGCost);
-                    neighbor.setParent(current);
-                    neighbor.setH(map.ManhattanDistance(neighbor, end));
-                    openList.add(neighbor);
+            map.close(current);
+            int neighborCount = map.getClusterNeighborIndices(current, neighbors);
+            for (int i = 0; i < neighborCount; i++) {
+                int neighbor = neighbors[i];
+                if (map.isObstacle(neighbor) || map.isClosed(neighbor)) continue;
+                double tentativeGCost = map.getG(current)
+                        + (map.getX(neighbor) != map.getX(current) && map.getY(neighbor) != map.getY(current) ? Math.sqrt(2) : 1)
+                        + (map.isVisited(neighbor) ? 2 : 0);
+                if (tentativeGCost < map.getG(neighbor)) {
+                    map.setG(neighbor, tentativeGCost);
+                    map.setParent(neighbor, current);
+                    double h = heuristic(map, landmarks, neighbor, endIndex);
+                    openList.push(neighbor, tentativeGCost + h, h);
                 }
             }
         }
         return Collections.emptyList();
     }
 
+    private double heuristic(@NotNull GridMap map, @Nullable LandmarkTable landmarks, int index, int endIndex) {
+        double diagonal = map.diagonalDistance(index, endIndex);
+        return null == landmarks ? diagonal : Math.max(diagonal, landmarks.lowerBound(index, endIndex));
+    }
+
     /**
      * 从目标节点开始，沿着父节点指针回溯，直到到达起点，形成路径。
      * 最后，将路径反转，使其从起点到终点。
-     * @param gridNode 目标节点
+     * @param map 网格地图
+     * @param index 目标格子的下标
      * @return 从起点到终点的路径
      */
-    private @NotNull List<Point> reconstructPath(GridNode gridNode) {
+    private @NotNull List<Point> reconstructPath(@NotNull GridMap map, int index) {
         List<Point> path = new ArrayList<>();
-        while (gridNode != null) {
-            path.add(new Point(gridNode.getX(), gridNode.getY()));
-            gridNode = gridNode.getParent();
+        while (index != GridMap.NO_PARENT) {
+            path.add(new Point(map.getX(index), map.getY(index)));
+            index = map.getParent(index);
         }
         path.remove(path.size() - 1);
         Collections.reverse(path);
@@ -69,4 +85,4 @@ public class AStar implements PathPlanningStrategy {
         map.setClusterWidth(width);
         map.setClusterHeight(height);
     }
-}
\ No newline at end of file
+}
@@ -4,7 +4,6 @@ import ncepusa.distributedcars.navigator.data_structures.GridMap;
 import ncepusa.distributedcars.navigator.data_structures.GridNode;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.data.geo.Point;
-import org.springframework.data.util.Pair;
 
 import java.util.*;
 
@@ -24,25 +23,31 @@ public class BFS implements PathPlanningStrategy {
         map.setClusterWidth(1);
         map.setClusterHeight(1);
 
-        Queue<GridNode> queue = new LinkedList<>();
-        Set<GridNode> visited = new HashSet<>();
+        int startIndex = start.getIndex();
+        int endIndex = end.getIndex();
+        map.resetSearchState();
+        //每个格子最多入队一次，队列不会回绕
+        int[] queue = map.getSearchQueue();
+        int[] neighbors = new int[8];
+        int head = 0;
+        int tail = 0;
 
-        queue.add(start);
-        visited.add(start);
+        map.setParent(startIndex, GridMap.NO_PARENT);
+        queue[tail++] = startIndex;
+        map.close(startIndex);
 
-        while (!queue.isEmpty()) {
-            GridNode current = queue.poll();
+        while (head < tail) {
+            int current = queue[head++];
 
-            if (current.equals(end)) {
-                return reconstructPath(current);
+            if (current == endIndex) {
+                return reconstructPath(map, current);
             }
-            List<Pair<Point, Point>> neighbors = map.getClusterNeighbors(current);
-            for (int i = 0; i < neighbors.size(); i++) {
-                GridNode neighbor = map.getGridNode(neighbors.get(i).getSecond());
-                if (!neighbor.isObstacle() && !visited.contains(neighbor)) {
-                    neighbor.setParent(current);
-                    visited.add(neighbor);
-                    queue.add(neighbor);
+            int neighborCount = map.getNeighborIndices(current, neighbors);
+            for (int i = 0; i < neighborCount; i++) {
+                int neighbor = neighbors[i];
+                if (map.close(neighbor)) {
+                    map.setParent(neighbor, current);
+                    queue[tail++] = neighbor;
                 }
             }
         }
@@ -50,14 +55,14 @@ public class BFS implements PathPlanningStrategy {
         return Collections.emptyList();
     }
 
-    private @NotNull List<Point> reconstructPath(GridNode current) {
+    private @NotNull List<Point> reconstructPath(@NotNull GridMap map, int current) {
         LinkedList<Point> path = new LinkedList<>();
-        while (current != null) {
-            path.add(new Point(current.getX(), current.getY()));
-            current = current.getParent();
+        while (current != GridMap.NO_PARENT) {
+            path.add(new Point(map.getX(current), map.getY(current)));
+            current = map.getParent(current);
         }
         path.removeLast();
         Collections.reverse(path);
         return path;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.GridNode;
+import ncepusa.distributedcars.navigator.data_structures.IndexedMinHeap;
+import ncepusa.distributedcars.navigator.data_structures.SearchState;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.data.geo.Point;
+
+import java.util.*;
+
+/**
+ * <p>双向A*算法</p>
+ * <p>从起点正向、从终点反向同时搜索，每次扩展开放列表f值更小的一侧。两侧都到达过的格子构成一条候选路径，
+ * 记下其中最短的长度 μ；任意一侧开放列表的最小f值不小于 μ 时，不可能再有更短的路径，停止搜索</p>
+ * <p>代价与 {@link AStar} 相同，进入已探索格子额外加2，反向搜索沿边反走时把惩罚加在离开的格子上。
+ * 启发函数是对角距离，是一致的，停止条件才成立</p>
+ * <p>正向一侧使用地图的搜索状态和线程私有的开放列表，反向一侧使用线程私有的另一份，搜索过程中不分配内存</p>
+ *
+ * @author 0109
+ * @since 2025-06-06
+ */
+public class BidirectionalAStar implements PathPlanningStrategy {
+    /**
+     * 扩展格子时的邻居缓冲区，实例由 {@link PathPlanning} 按线程持有，不会被并发使用
+     */
+    private final int[] neighbors = new int[8];
+
+    @Override
+    public List<Point> planPath(@NotNull GridMap map, @NotNull GridNode start, @NotNull GridNode end) {
+        if (start.equals(end)) {
+            return List.of();
+        }
+        int startIndex = start.getIndex();
+        int endIndex = end.getIndex();
+        int size = map.getWidth() * map.getHeight();
+        IndexedMinHeap forwardOpen = IndexedMinHeap.forCurrentThread(size);
+        IndexedMinHeap backwardOpen = IndexedMinHeap.reverseForCurrentThread(size);
+        map.resetSearchState();
+        SearchState backward = SearchState.reverseForCurrentThread(size);
+        backward.reset();
+
+        map.setG(startIndex, 0);
+        map.setParent(startIndex, GridMap.NO_PARENT);
+        double startH = map.diagonalDistance(startIndex, endIndex);
+        forwardOpen.push(startIndex, startH, startH);
+        backward.setG(endIndex, 0);
+        backward.setParent(endIndex, GridMap.NO_PARENT);
+        backwardOpen.push(endIndex, startH, startH);
+
+        double bestLength = Double.POSITIVE_INFINITY;
+        int meeting = GridMap.NO_PARENT;
+        while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty()) {
+            if (forwardOpen.peekKey() >= bestLength || backwardOpen.peekKey() >= bestLength) break;
+            boolean forwardSide = forwardOpen.peekKey() <= backwardOpen.peekKey();
+            if (forwardSide) {
+                int current = forwardOpen.poll();
+                map.close(current);
+                int neighborCount = map.getNeighborIndices(current, neighbors);
+                for (int i = 0; i < neighborCount; i++) {
+                    int neighbor = neighbors[i];
+                    if (map.isClosed(neighbor)) continue;
+                    double tentativeGCost = map.getG(current) + stepCost(map, current, neighbor) + penalty(map, neighbor);
+                    if (tentativeGCost < map.getG(neighbor)) {
+                        map.setG(neighbor, tentativeGCost);
+                        map.setParent(neighbor, current);
+                        double h = map.diagonalDistance(neighbor, endIndex);
+                        forwardOpen.push(neighbor, tentativeGCost + h, h);
+                    }
+                    if (backward.getG(neighbor) < GridMap.INFINITE_G && map.getG(neighbor) < GridMap.INFINITE_G
+                            && map.getG(neighbor) + backward.getG(neighbor) < bestLength) {
+                        bestLength = map.getG(neighbor) + backward.getG(neighbor);
+                        meeting = neighbor;
+                    }
+                }
+            } else {
+                int current = backwardOpen.poll();
+                backward.close(current);
+                int neighborCount = map.getNeighborIndices(current, neighbors);
+                for (int i = 0; i < neighborCount; i++) {
+                    int neighbor = neighbors[i];
+                    if (backward.isClosed(neighbor)) continue;
+                    //反向扩展的边是 neighbor -> current，惩罚加在被进入的 current 上
+                    double tentativeGCost = backward.getG(current) + stepCost(map, current, neighbor) + penalty(map, current);
+                    if (tentativeGCost < backward.getG(neighbor)) {
+                        backward.setG(neighbor, tentativeGCost);
+                        backward.setParent(neighbor, current);
+                        double h = map.diagonalDistance(neighbor, startIndex);
+                        backwardOpen.push(neighbor, tentativeGCost + h, h);
+                    }
+                    if (backward.getG(neighbor) < GridMap.INFINITE_G && map.getG(neighbor) < GridMap.INFINITE_G
+                            && map.getG(neighbor) + backward.getG(neighbor) < bestLength) {
+                        bestLength = map.getG(neighbor) + backward.getG(neighbor);
+                        meeting = neighbor;
+                    }
+                }
+            }
+        }
+        if (meeting == GridMap.NO_PARENT) {
+            return Collections.emptyList();
+        }
+        return reconstructPath(map, backward, meeting);
+    }
+
+    private double stepCost(@NotNull GridMap map, int a, int b) {
+        return map.getX(a) != map.getX(b) && map.getY(a) != map.getY(b) ? Math.sqrt(2) : 1;
+    }
+
+    private double penalty(@NotNull GridMap map, int index) {
+        return map.isVisited(index) ? 2 : 0;
+    }
+
+    /**
+     * 正向部分从相遇格子沿父节点回溯到起点再反转，反向部分从相遇格子沿父节点走到终点
+     *
+     * @return 不含起点的路径
+     */
+    private @NotNull List<Point> reconstructPath(@NotNull GridMap map, @NotNull SearchState backward, int meeting) {
+        List<Point> path = new ArrayList<>();
+        for (int index = meeting; index != GridMap.NO_PARENT; index = map.getParent(index)) {
+            path.add(new Point(map.getX(index), map.getY(index)));
+        }
+        path.remove(path.size() - 1);
+        Collections.reverse(path);
+        for (int index = backward.getParent(meeting); index != GridMap.NO_PARENT; index = backward.getParent(index)) {
+            path.add(new Point(map.getX(index), map.getY(index)));
+        }
+        return path;
+    }
+}
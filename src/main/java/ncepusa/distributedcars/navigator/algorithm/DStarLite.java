@@ -3,24 +3,328 @@ package ncepusa.distributedcars.navigator.algorithm;
 
 import ncepusa.distributedcars.navigator.data_structures.GridMap;
 import ncepusa.distributedcars.navigator.data_structures.GridNode;
+import ncepusa.distributedcars.navigator.data_structures.IndexedMinHeap;
+import ncepusa.distributedcars.navigator.data_structures.PackedBitmap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.geo.Point;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>D*Lite算法</p>
- * <p>原本用于处理动态环境或未知环境下的路径规划，当小车无法预先知道地图障碍物情况时使用，但当前版本的地图环境是已知的<\p>
- * <p>该算法是A*算法的改进版本，能够在环境变化时高效地重新规划路径。</p>
+ * <p>用于处理动态环境或未知环境下的路径规划：障碍物地图随着小车探索逐步揭开，每条消息都要重新规划</p>
+ * <p>该算法是A*算法的改进版本，从终点向起点反向搜索，每辆车的搜索树（g值、rhs值和开放列表）按小车编号在消息之间保留。
+ * 下一条消息到来时，如果终点没有变，只把小车移动的距离累加到 {@code km}，再把前后两个快照障碍物位图的差异
+ * 应用到变化的格子和它们的邻居上，修复搜索树而不是从头搜索。终点变化、地图尺寸变化或变化的格子太多时从头搜索</p>
+ * <p>搜索状态保存在所有实例共享的LRU表中，按格子总数限制内存，空闲最久的小车的状态最先被淘汰。
+ * 同一辆车的两条消息被并发处理时，后取的一方拿不到状态，从头搜索，不会互相干扰</p>
+ * <p>代价不考虑已探索格子的惩罚，没有设置小车编号的地图每次都从头搜索</p>
+ * <p>终点每条消息都会重新选举，为了让搜索树可以修复，上一次的终点只要仍是合法的候选终点就通过
+ * {@link #retainedEndpoint(GridMap)} 沿用，直到它被探索完或不再可达</p>
+ * <p>修复后的搜索树回溯不出路径说明修复有错误，此时记录警告并从头搜索一次，次数见 {@link #getRepairFallbacks()}；
+ * 从头搜索的总次数见 {@link #getFreshSearches()}</p>
  *
  * @author 0109
  * @since 2025-05-21
- * @deprecated 当前版本暂不使用，保留供未来扩展
  */
-@Deprecated
 public class DStarLite implements PathPlanningStrategy {
+    private static final Logger logger = LoggerFactory.getLogger(DStarLite.class);
+    /**
+     * 所有小车的搜索状态加起来最多覆盖的格子数，每个格子大约占40字节
+     */
+    private static final long MAX_CACHED_CELLS = 1L << 22;
+    /**
+     * 变化的格子超过地图的这个比例时直接从头搜索
+     */
+    private static final int MAX_CHANGED_FRACTION = 8;
+    /**
+     * 比较键值时容忍的浮点误差，起点的rhs值是一步步累加出来的，和“某个格子的g值 + 启发值”可能差最后几位
+     */
+    private static final double EPSILON = 1e-6;
+    private static final double INFINITE = Double.POSITIVE_INFINITY;
+    private static final double SQRT2 = Math.sqrt(2);
 
+    private static final LinkedHashMap<Integer, State> STATES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedCells = 0;
+    private static final AtomicLong REPAIR_FALLBACKS = new AtomicLong();
+    private static final AtomicLong FRESH_SEARCHES = new AtomicLong();
+
+    /**
+     * 一辆车的搜索树
+     */
+    private static final class State {
+        private final int width;
+        private final int height;
+        private final double[] g;
+        private final double[] rhs;
+        private final IndexedMinHeap openList;
+        private int goal;
+        private int lastStart;
+        private double km;
+        /**
+         * 搜索树对应的障碍物位图
+         */
+        private PackedBitmap obstacles;
+        /**
+         * 扩展格子和回溯路径时的邻居缓冲区
+         */
+        private final int[] neighbors = new int[8];
+        /**
+         * {@link #minSuccessor(GridMap, State, int)} 的邻居缓冲区，它在遍历 {@link #neighbors} 的过程中被调用，不能共用
+         */
+        private final int[] successors = new int[8];
+
+        private State(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.g = new double[width * height];
+            this.rhs = new double[width * height];
+            this.openList = new IndexedMinHeap(width * height);
+        }
+
+        private long cells() {
+            return (long) width * height;
+        }
+    }
+
+    @Override
+    public List<Point> planPath(@NotNull GridMap map, @NotNull GridNode start, @NotNull GridNode end) {
+        if (start.equals(end)) {
+            return List.of();
+        }
+        int startIndex = start.getIndex();
+        int endIndex = end.getIndex();
+        State state = acquire(map);
+        if (null == state || state.goal != endIndex || !repair(map, state, startIndex)) {
+            if (null == state) state = new State(map.getWidth(), map.getHeight());
+            FRESH_SEARCHES.incrementAndGet();
+            initialize(map, state, startIndex, endIndex);
+        }
+        computeShortestPath(map, state, startIndex);
+        List<Point> path = extractPath(map, state, startIndex);
+        if (null == path) {
+            //搜索树没有完全一致时可能回溯失败，从头搜索一次
+            REPAIR_FALLBACKS.incrementAndGet();
+            logger.warn("D* Lite repair left an inconsistent search tree for car {}, searching from scratch", map.getCarId());
+            initialize(map, state, startIndex, endIndex);
+            computeShortestPath(map, state, startIndex);
+            path = extractPath(map, state, startIndex);
+        }
+        release(map, state);
+        return null == path ? Collections.emptyList() : path;
+    }
+
+    /**
+     * @return 修复后回溯失败、改为从头搜索的次数，正常情况下一直是0
+     */
+    public static long getRepairFallbacks() {
+        return REPAIR_FALLBACKS.get();
+    }
+
+    /**
+     * @return 没有可以修复的搜索树、从头搜索的次数，不含 {@link #getRepairFallbacks()}
+     */
+    public static long getFreshSearches() {
+        return FRESH_SEARCHES.get();
+    }
+
+    /**
+     * <p>返回小车上一次搜索的终点，由调用方检查它是否仍是合法的候选终点</p>
+     * <p>搜索状态正被其他线程使用、已被淘汰或地图尺寸变化时不沿用</p>
+     */
     @Override
-    public List<Point> planPath(GridMap map, GridNode start, GridNode end){
-        return null;
+    public int retainedEndpoint(@NotNull GridMap map) {
+        if (map.getCarId() == GridMap.NO_CAR) return GridMap.NO_PARENT;
+        synchronized (STATES) {
+            State state = STATES.get(map.getCarId());
+            if (null == state || state.width != map.getWidth() || state.height != map.getHeight()) return GridMap.NO_PARENT;
+            return state.goal;
+        }
+    }
+
+    /**
+     * 取出小车的搜索状态，取出期间其他线程拿不到
+     */
+    private static @Nullable State acquire(@NotNull GridMap map) {
+        if (map.getCarId() == GridMap.NO_CAR) return null;
+        synchronized (STATES) {
+            State state = STATES.remove(map.getCarId());
+            if (null == state) return null;
+            cachedCells -= state.cells();
+            if (state.width != map.getWidth() || state.height != map.getHeight()) return null;
+            return state;
+        }
+    }
+
+    /**
+     * 放回小车的搜索状态，超出内存上限时淘汰空闲最久的小车
+     */
+    private static void release(@NotNull GridMap map, @NotNull State state) {
+        if (map.getCarId() == GridMap.NO_CAR || state.cells() > MAX_CACHED_CELLS) return;
+        synchronized (STATES) {
+            State previous = STATES.put(map.getCarId(), state);
+            if (null != previous) cachedCells -= previous.cells();
+            cachedCells += state.cells();
+            Iterator<State> eldest = STATES.values().iterator();
+            while (cachedCells > MAX_CACHED_CELLS && eldest.hasNext()) {
+                cachedCells -= eldest.next().cells();
+                eldest.remove();
+            }
+        }
+    }
+
+    private void initialize(@NotNull GridMap map, @NotNull State state, int startIndex, int endIndex) {
+        Arrays.fill(state.g, INFINITE);
+        Arrays.fill(state.rhs, INFINITE);
+        state.openList.clear();
+        state.goal = endIndex;
+        state.lastStart = startIndex;
+        state.km = 0;
+        state.obstacles = map.getSnapshot().getObstacles();
+        state.rhs[endIndex] = 0;
+        pushWithKey(map, state, endIndex, startIndex);
+    }
+
+    /**
+     * 把小车的移动和障碍物的变化应用到搜索树上
+     *
+     * @return 能否修复，变化太多时返回false
+     */
+    private boolean repair(@NotNull GridMap map, @NotNull State state, int startIndex) {
+        state.km += map.diagonalDistance(state.lastStart, startIndex);
+        state.lastStart = startIndex;
+        PackedBitmap obstacles = map.getSnapshot().getObstacles();
+        if (obstacles == state.obstacles) return true;
+        int[] changed = state.obstacles.diff(obstacles, state.width * state.height);
+        if (changed.length > state.width * state.height / MAX_CHANGED_FRACTION) return false;
+        state.obstacles = obstacles;
+        //格子的障碍物状态变化会改变它自己和8个邻居的出边（包括绕过它的斜向边），重新计算这些格子的rhs
+        for (int cell : changed) {
+            int x = map.getX(cell);
+            int y = map.getY(cell);
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if (nx < 0 || nx >= state.width || ny < 0 || ny >= state.height) continue;
+                    int u = map.toIndex(nx, ny);
+                    if (u != state.goal) state.rhs[u] = minSuccessor(map, state, u);
+                    updateVertex(map, state, u, startIndex);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void computeShortestPath(@NotNull GridMap map, @NotNull State state, int startIndex) {
+        IndexedMinHeap openList = state.openList;
+        int[] neighbors = state.neighbors;
+        while (!openList.isEmpty()) {
+            //堆按主键精确排序，主键只差浮点误差时次键更小的格子可能排在后面，所以主键在误差范围内的格子都要处理
+            double startKey1 = Math.min(state.g[startIndex], state.rhs[startIndex]) + state.km;
+            if (openList.peekKey() > startKey1 + EPSILON && state.rhs[startIndex] == state.g[startIndex]) break;
+            int u = openList.peek();
+            double oldKey1 = openList.peekKey();
+            double oldKey2 = openList.peekTie();
+            double best = Math.min(state.g[u], state.rhs[u]);
+            double newKey1 = best + map.diagonalDistance(startIndex, u) + state.km;
+            if (oldKey1 < newKey1 || (oldKey1 == newKey1 && oldKey2 < best)) {
+                openList.push(u, newKey1, best);
+                continue;
+            }
+            openList.poll();
+            int neighborCount = map.getNeighborIndices(u, neighbors);
+            if (state.g[u] > state.rhs[u]) {
+                state.g[u] = state.rhs[u];
+                if (map.isObstacle(u)) continue;
+                for (int i = 0; i < neighborCount; i++) {
+                    int s = neighbors[i];
+                    if (s == state.goal) continue;
+                    double candidate = cost(map, s, u) + state.g[u];
+                    if (candidate < state.rhs[s]) {
+                        state.rhs[s] = candidate;
+                        updateVertex(map, state, s, startIndex);
+                    }
+                }
+            } else {
+                double oldG = state.g[u];
+                state.g[u] = INFINITE;
+                if (u != state.goal) state.rhs[u] = minSuccessor(map, state, u);
+                updateVertex(map, state, u, startIndex);
+                if (map.isObstacle(u)) continue;
+                for (int i = 0; i < neighborCount; i++) {
+                    int s = neighbors[i];
+                    if (s != state.goal && state.rhs[s] == cost(map, s, u) + oldG) {
+                        state.rhs[s] = minSuccessor(map, state, s);
+                        updateVertex(map, state, s, startIndex);
+                    }
+                }
+            }
+        }
+    }
+
+    private void updateVertex(@NotNull GridMap map, @NotNull State state, int u, int startIndex) {
+        if (state.g[u] != state.rhs[u]) {
+            pushWithKey(map, state, u, startIndex);
+        } else {
+            state.openList.remove(u);
+        }
+    }
+
+    private void pushWithKey(@NotNull GridMap map, @NotNull State state, int u, int startIndex) {
+        double best = Math.min(state.g[u], state.rhs[u]);
+        state.openList.push(u, best + map.diagonalDistance(startIndex, u) + state.km, best);
+    }
+
+    /**
+     * @return 从u走一步到某个邻居再到终点的最小代价，u是障碍物时为无穷大
+     */
+    private double minSuccessor(@NotNull GridMap map, @NotNull State state, int u) {
+        if (map.isObstacle(u)) return INFINITE;
+        int[] neighbors = state.successors;
+        int neighborCount = map.getNeighborIndices(u, neighbors);
+        double best = INFINITE;
+        for (int i = 0; i < neighborCount; i++) {
+            best = Math.min(best, cost(map, u, neighbors[i]) + state.g[neighbors[i]]);
+        }
+        return best;
+    }
+
+    private double cost(@NotNull GridMap map, int a, int b) {
+        return map.getX(a) != map.getX(b) && map.getY(a) != map.getY(b) ? SQRT2 : 1;
+    }
+
+    /**
+     * 从起点沿着代价最小的邻居一直走到终点
+     *
+     * @return 不含起点的路径，起点不可达时为空，回溯不下去时返回null
+     */
+    private @Nullable List<Point> extractPath(@NotNull GridMap map, @NotNull State state, int startIndex) {
+        if (state.g[startIndex] == INFINITE || map.isObstacle(startIndex)) return Collections.emptyList();
+        List<Point> path = new ArrayList<>();
+        int[] neighbors = state.neighbors;
+        int current = startIndex;
+        int limit = state.width * state.height;
+        while (current != state.goal) {
+            if (path.size() >= limit) return null;
+            int neighborCount = map.getNeighborIndices(current, neighbors);
+            int next = -1;
+            double best = INFINITE;
+            for (int i = 0; i < neighborCount; i++) {
+                double candidate = cost(map, current, neighbors[i]) + state.g[neighbors[i]];
+                if (candidate < best) {
+                    best = candidate;
+                    next = neighbors[i];
+                }
+            }
+            if (next < 0 || best == INFINITE) return null;
+            path.add(new Point(map.getX(next), map.getY(next)));
+            current = next;
+        }
+        return path;
     }
 }
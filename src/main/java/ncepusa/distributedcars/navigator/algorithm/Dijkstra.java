@@ -2,14 +2,17 @@ package ncepusa.distributedcars.navigator.algorithm;
 
 import ncepusa.distributedcars.navigator.data_structures.GridMap;
 import ncepusa.distributedcars.navigator.data_structures.GridNode;
+import ncepusa.distributedcars.navigator.data_structures.RadixHeap;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.data.geo.Point;
-import org.springframework.data.util.Pair;
 
 import java.util.*;
 
 /**
  * <p>Dijkstra算法</p>
+ * <p>出队代价单调不减，开放列表使用基数堆 {@link RadixHeap}</p>
+ * <p>代价只按移动计算，不包含已探索格子的额外代价，与 {@link Floyd} 的全源最短路径表相同，
+ * Floyd在大地图上改用本算法时代价不变</p>
  *
  * @author 0109
  * @since 2025-06-02
@@ -24,30 +27,34 @@ public class Dijkstra implements PathPlanningStrategy {
         map.setClusterWidth(1);
         map.setClusterHeight(1);
 
-        PriorityQueue<GridNode> openSet = new PriorityQueue<>(Comparator.comparingDouble(GridNode::getG));
-        Set<GridNode> closedSet = new HashSet<>();
+        int startIndex = start.getIndex();
+        int endIndex = end.getIndex();
+        RadixHeap openSet = RadixHeap.forCurrentThread();
 
-        start.setG(0);
-        openSet.add(start);
+        map.resetSearchState();
+        int[] neighbors = new int[8];
+        map.setG(startIndex, 0);
+        map.setParent(startIndex, GridMap.NO_PARENT);
+        openSet.push(startIndex, 0);
 
         while (!openSet.isEmpty()) {
-            GridNode current = openSet.poll();
-            if (current.equals(end)) {
-                return reconstructPath(current);
+            int current = openSet.poll();
+            if (current == endIndex) {
+                return reconstructPath(map, current);
             }
-            closedSet.add(current);
-            List<Pair<Point, Point>> neighbors = map.getClusterNeighbors(current);
-            for (int i = 0; i < neighbors.size(); i++) {
-                GridNode neighbor = map.getGridNode(neighbors.get(i).getSecond());
-                if (neighbor.isObstacle() || closedSet.contains(neighbor)) {
+            if (!map.close(current)) continue;
+            int neighborCount = map.getNeighborIndices(current, neighbors);
+            for (int i = 0; i < neighborCount; i++) {
+                int neighbor = neighbors[i];
+                if (map.isClosed(neighbor)) {
                     continue;
                 }
-                double tentativeGScore = current.getG() +
-                    (neighbor.getX() != current.getX() && neighbor.getY() != current.getY() ? Math.sqrt(2) : 1);
-                if (tentativeGScore < neighbor.getG()) {
-                    neighbor.setParent(current);
-                    neighbor.setG(tentativeGScore);
-                    openSet.add(neighbor);
+                double tentativeGScore = map.getG(current) +
+                    (map.getX(neighbor) != map.getX(current) && map.getY(neighbor) != map.getY(current) ? Math.sqrt(2) : 1);
+                if (tentativeGScore < map.getG(neighbor)) {
+                    map.setParent(neighbor, current);
+                    map.setG(neighbor, tentativeGScore);
+                    openSet.push(neighbor, tentativeGScore);
                 }
             }
         }
@@ -55,14 +62,14 @@ public class Dijkstra implements PathPlanningStrategy {
         return Collections.emptyList();
     }
 
-    private @NotNull List<Point> reconstructPath(GridNode current) {
+    private @NotNull List<Point> reconstructPath(@NotNull GridMap map, int current) {
         LinkedList<Point> path = new LinkedList<>();
-        while (current != null) {
-            path.add(new Point(current.getX(), current.getY()));
-            current = current.getParent();
+        while (current != GridMap.NO_PARENT) {
+            path.add(new Point(map.getX(current), map.getY(current)));
+            current = map.getParent(current);
         }
         path.removeLast();
         Collections.reverse(path);
         return path;
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,6 @@
-
 package ncepusa.distributedcars.navigator.algorithm;
 
+import ncepusa.distributedcars.navigator.data_structures.AllPairsTable;
 import ncepusa.distributedcars.navigator.data_structures.GridMap;
 import ncepusa.distributedcars.navigator.data_structures.GridNode;
 import org.jetbrains.annotations.NotNull;
@@ -10,71 +10,38 @@ import java.util.*;
 
 /**
  * <p>Floyd算法</p>
+ * <p>全源最短路径表（见 {@link AllPairsTable}）按障碍物版本只计算一次，所有小车共享，
+ * 查询时沿表中的下一步走到终点，代价与路径长度成正比</p>
+ * <p>地图的格子数超过 {@link AllPairsTable#MAX_CELLS} 时计算全源最短路径太慢，改用 {@link Dijkstra}。
+ * 两者的代价都只按移动计算（直走1，斜走√2，不能穿角），都不包含已探索格子的额外代价，
+ * 所以不论地图大小，路径都是同一代价下最短的。这与 {@link AStar} 的代价不同，A*会绕开已探索的格子</p>
  *
  * @author 0109
  * @since 2025-06-02
  */
-public class Floyd implements PathPlanningStrategy {
+public class Floyd extends Dijkstra {
     @Override
     public List<Point> planPath(@NotNull GridMap map, @NotNull GridNode start, @NotNull GridNode end) {
         if (start.equals(end)) {
             return List.of();
         }
-
-        Map<GridNode, Map<GridNode, Double>> dist = new HashMap<>();
-        Map<GridNode, Map<GridNode, GridNode>> next = new HashMap<>();
-
-        List<GridNode> allNodes = map.getAllNodes();
-
-        for (GridNode u : allNodes) {
-            dist.put(u, new HashMap<>());
-            next.put(u, new HashMap<>());
-            
-            for (GridNode v : allNodes) {
-                if (u.equals(v)) {
-                    dist.get(u).put(v, 0.0);
-                } else if (map.isNodeNeighbor(u, v) && !v.isObstacle()) {
-                    double cost = (u.getX() != v.getX() && u.getY() != v.getY()) ? Math.sqrt(2) : 1;
-                    dist.get(u).put(v, cost);
-                    next.get(u).put(v, v);
-                } else {
-                    dist.get(u).put(v, Double.POSITIVE_INFINITY);
-                }
-            }
+        if (!AllPairsTable.supports(map.getWidth(), map.getHeight())) {
+            return super.planPath(map, start, end);
         }
-
-        for (GridNode k : allNodes) {
-            for (GridNode i : allNodes) {
-                for (GridNode j : allNodes) {
-                    if (dist.get(i).get(k) + dist.get(k).get(j) < dist.get(i).get(j)) {
-                        dist.get(i).put(j, dist.get(i).get(k) + dist.get(k).get(j));
-                        next.get(i).put(j, next.get(i).get(k));
-                    }
-                }
-            }
-        }
-        if (next.get(start).get(end) == null) {
+        AllPairsTable table = map.getAllPairs();
+        int endIndex = end.getIndex();
+        int current = start.getIndex();
+        if (table.getDistance(current, endIndex) == Double.POSITIVE_INFINITY) {
             return Collections.emptyList();
         }
-
         List<Point> path = new ArrayList<>();
-        GridNode current = start;
-
-        int maxSteps = allNodes.size() * 2;
-        int steps = 0;
-
-        while (!current.equals(end)) {
-            GridNode nextNode = next.get(current).get(end);
-            if (nextNode == null || path.contains(nextNode)) {
-                return Collections.emptyList(); // 防止死循环或无效路径
-            }
-            path.add(new Point(nextNode.getX(), nextNode.getY()));
-            current = nextNode;
-
-            if (++steps > maxSteps) {
-                return Collections.emptyList(); // 超过最大步数，可能是环路
+        while (current != endIndex) {
+            current = table.nextStep(current, endIndex);
+            if (current < 0) {
+                return Collections.emptyList();
             }
+            path.add(new Point(map.getX(current), map.getY(current)));
         }
         return path;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,114 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.RadixHeap;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.data.geo.Point;
+
+import java.util.*;
+
+/**
+ * <p>单次多目标搜索：一次完成终点选举和路径规划</p>
+ * <p>原来的做法是先用 {@link GridMap#electEndpoint(int, int)} 选出终点再搜索，终点不可达时换一个终点重新搜索，
+ * 在有封闭区域的地图上一条消息可能要搜索上千次。这里从起点做一次Dijkstra扩展，
+ * 每个出队的格子都是可达的，直接用 {@link GridMap#countUnexploredNeighbors(int)} 给它打分，
+ * 扩展结束后选出得分最高的格子作为终点，它的路径也已经在搜索树中了</p>
+ * <p>选举规则和 {@link GridMap#electEndpoint(int, int)} 一致：优先选择自己区域内未探索邻居最多的格子，
+ * 自己区域内没有候选点时再协助其他区域；得分相同时选择离起点曼哈顿距离更近的格子，距离也相同时选择下标更小的格子。
+ * 两者选出的终点完全相同，区别只是这里只会遇到可达的格子，并且顺带得到了路径</p>
+ *
+ * @author 0109
+ * @since 2025-06-02
+ */
+public class FrontierSearch {
+    /**
+     * 选举终点并规划路径，选出的终点通过 {@link GridMap#setEnd(Point)} 写回地图
+     *
+     * @param map 网格地图，起点已设置
+     * @param carNumbers 小车数量
+     * @param carid 当前小车的id
+     * @return 从起点到终点的路径（不含起点），没有可达的终点时返回空列表，且地图的终点为 null
+     */
+    public List<Point> electAndPlan(@NotNull GridMap map, int carNumbers, int carid) {
+        int[] region = map.getExploreRegion(carNumbers, carid);
+        int startIndex = map.getStart().getIndex();
+
+        map.setClusterWidth(1);
+        map.setClusterHeight(1);
+        map.resetSearchState();
+        int[] neighbors = new int[8];
+
+        RadixHeap openSet = RadixHeap.forCurrentThread();
+        map.setG(startIndex, 0);
+        map.setParent(startIndex, GridMap.NO_PARENT);
+        openSet.push(startIndex, 0);
+
+        //{下标, 得分, 曼哈顿距离}，分别记录区域内和区域外的最优候选
+        int[] bestInRegion = {GridMap.NO_PARENT, 0, Integer.MAX_VALUE};
+        int[] bestOutside = {GridMap.NO_PARENT, 0, Integer.MAX_VALUE};
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            if (!map.close(current)) continue;
+
+            //曼哈顿距离与出队顺序无关，所以要扩展完所有可达的格子才能确定终点
+            if (current != startIndex && map.isArrived(current)) {
+                int unexploredCount = map.countUnexploredNeighbors(current);
+                if (unexploredCount > 0) {
+                    int distance = Math.abs(map.getX(current) - map.getX(startIndex))
+                            + Math.abs(map.getY(current) - map.getY(startIndex));
+                    offer(isInRegion(map, current, region) ? bestInRegion : bestOutside, current, unexploredCount, distance);
+                }
+            }
+
+            int neighborCount = map.getNeighborIndices(current, neighbors);
+            for (int i = 0; i < neighborCount; i++) {
+                int neighbor = neighbors[i];
+                if (map.isClosed(neighbor)) continue;
+                double tentativeGScore = map.getG(current) +
+                        (map.getX(neighbor) != map.getX(current) && map.getY(neighbor) != map.getY(current) ? Math.sqrt(2) : 1);
+                if (tentativeGScore < map.getG(neighbor)) {
+                    map.setParent(neighbor, current);
+                    map.setG(neighbor, tentativeGScore);
+                    openSet.push(neighbor, tentativeGScore);
+                }
+            }
+        }
+
+        int end = bestInRegion[0] != GridMap.NO_PARENT ? bestInRegion[0] : bestOutside[0];
+        if (end == GridMap.NO_PARENT) {
+            map.setEnd(null);
+            return Collections.emptyList();
+        }
+        map.setEnd(new Point(map.getX(end), map.getY(end)));
+        return reconstructPath(map, end);
+    }
+
+    /**
+     * 得分更高，或者得分相同时距离更近、距离也相同时下标更小的格子替换当前的最优候选
+     */
+    private void offer(@NotNull int[] best, int index, int unexploredCount, int distance) {
+        if (unexploredCount > best[1]
+                || unexploredCount == best[1] && (distance < best[2] || distance == best[2] && index < best[0])) {
+            best[0] = index;
+            best[1] = unexploredCount;
+            best[2] = distance;
+        }
+    }
+
+    private boolean isInRegion(@NotNull GridMap map, int index, @NotNull int[] region) {
+        int x = map.getX(index);
+        int y = map.getY(index);
+        return x >= region[0] && x < region[1] && y >= region[2] && y < region[3];
+    }
+
+    private @NotNull List<Point> reconstructPath(@NotNull GridMap map, int current) {
+        LinkedList<Point> path = new LinkedList<>();
+        while (current != GridMap.NO_PARENT) {
+            path.add(new Point(map.getX(current), map.getY(current)));
+            current = map.getParent(current);
+        }
+        path.removeLast();
+        Collections.reverse(path);
+        return path;
+    }
+}
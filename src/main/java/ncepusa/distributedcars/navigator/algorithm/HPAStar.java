@@ -1,64 +1,131 @@
 package ncepusa.distributedcars.navigator.algorithm;
 
+import ncepusa.distributedcars.navigator.data_structures.ClusterGraph;
 import ncepusa.distributedcars.navigator.data_structures.GridMap;
 import ncepusa.distributedcars.navigator.data_structures.GridNode;
-import org.jetbrains.annotations.Contract;
+import ncepusa.distributedcars.navigator.data_structures.IndexedMinHeap;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
-import org.jetbrains.annotations.Unmodifiable;
 import org.springframework.data.geo.Point;
 
 import java.util.*;
 
 /**
  * <p>HPA*(Hierarchical Pathfinding A*)算法</p>
+ * <p>先在 {@link ClusterGraph} 上做A*：起点和终点临时接入各自所在的簇，在簇内搜索一次得到到各个过渡点的距离，
+ * 启发函数用八方向距离，簇图的边按直走1、斜走√2计价，八方向距离不会高估，关闭的抽象节点不需要重新打开；
+ * 再把抽象路径的每一段还原成格子，跨边界的一段就是相邻的两个过渡点，其余每段都在一个簇内搜索</p>
+ * <p>簇图按障碍物版本缓存在地图快照上，所有小车共享。得到的路径不一定最短，但搜索范围只和簇的数量、
+ * 起终点所在簇的大小有关，适合大地图上的长距离规划。代价不考虑已探索格子的惩罚</p>
  *
  * @author 0109
  * @since 2025-06-04
- * @deprecated 未完成，不使用
  */
-@Deprecated
 public class HPAStar implements PathPlanningStrategy {
-    private int clusterWidth;
-    private int clusterHeight;
     @Override
-    public List<Point> planPath(GridMap map, @NotNull GridNode start, GridNode end) {
-        if (start.equals(end)) {
+    public List<Point> planPath(@NotNull GridMap map, @NotNull GridNode start, @NotNull GridNode end) {
+        int startIndex = start.getIndex();
+        int endIndex = end.getIndex();
+        if (startIndex == endIndex) {
             return List.of();
         }
-        List<Point> highLevelPath = findHighLevelPath(map, start, end);
+        ClusterGraph graph = map.getClusterGraph();
+        ClusterGraph.LocalSearch startSearch = graph.localSearch(startIndex, ClusterGraph.START_SEARCH);
+        startSearch.run(startIndex, -1);
+        ClusterGraph.LocalSearch endSearch = graph.localSearch(endIndex, ClusterGraph.END_SEARCH);
+        endSearch.run(endIndex, -1);
+        int startCluster = graph.clusterOf(startIndex);
+        int endCluster = graph.clusterOf(endIndex);
 
-        List<Point> detailedPath = new ArrayList<>();
-        for (int i = 0; i < highLevelPath.size() - 1; i++) {
-            Point currentCluster = highLevelPath.get(i);
-            Point nextCluster = highLevelPath.get(i + 1);
-            detailedPath.addAll(findIntraClusterPath(map, currentCluster, nextCluster));
+        IndexedMinHeap openList = IndexedMinHeap.forCurrentThread(map.getWidth() * map.getHeight());
+        map.resetSearchState();
+        map.setG(startIndex, 0);
+        map.setParent(startIndex, GridMap.NO_PARENT);
+        double startH = map.diagonalDistance(startIndex, endIndex);
+        openList.push(startIndex, startH, startH);
+        while (!openList.isEmpty()) {
+            int current = openList.poll();
+            if (current == endIndex) {
+                return refinePath(map, graph, startSearch, abstractPath(map, current));
+            }
+            map.close(current);
+            if (current == startIndex) {
+                ClusterGraph.Cluster cluster = graph.getCluster(startCluster);
+                for (int j = 0; j < cluster.size(); j++) {
+                    relax(map, openList, current, cluster.getNode(j), startSearch.distanceTo(cluster.getNode(j)), endIndex);
+                }
+                if (startCluster == endCluster) {
+                    relax(map, openList, current, endIndex, startSearch.distanceTo(endIndex), endIndex);
+                }
+            }
+            int clusterId = graph.clusterOf(current);
+            ClusterGraph.Cluster cluster = graph.getCluster(clusterId);
+            int i = cluster.indexOf(current);
+            if (i < 0) continue;
+            float[] distances = graph.getDistances(clusterId, i);
+            for (int j = 0; j < cluster.size(); j++) {
+                if (j != i) relax(map, openList, current, cluster.getNode(j), distances[j], endIndex);
+            }
+            for (int partner : cluster.getPartners(i)) {
+                relax(map, openList, current, partner, 1, endIndex);
+            }
+            if (clusterId == endCluster) {
+                relax(map, openList, current, endIndex, endSearch.distanceTo(current), endIndex);
+            }
         }
-
-        if(!detailedPath.isEmpty()) detailedPath.remove(0);
-
-        return detailedPath;
+        return Collections.emptyList();
     }
 
-    @Contract("_, _, _ -> new")
-    private @NotNull @Unmodifiable List<Point> findHighLevelPath(@NotNull GridMap map, @NotNull GridNode start, @NotNull GridNode end) {
-        map.setClusterSize();
-        clusterWidth = map.getClusterWidth();
-        clusterHeight = map.getClusterHeight();
-        return new AStar().planPath(map, start, end);
+    private void relax(@NotNull GridMap map, @NotNull IndexedMinHeap openList, int current, int neighbor, double cost, int endIndex) {
+        if (Double.isInfinite(cost) || map.isClosed(neighbor)) return;
+        double tentativeGCost = map.getG(current) + cost;
+        if (tentativeGCost < map.getG(neighbor)) {
+            map.setG(neighbor, tentativeGCost);
+            map.setParent(neighbor, current);
+            double h = map.diagonalDistance(neighbor, endIndex);
+            openList.push(neighbor, tentativeGCost + h, h);
+        }
     }
 
-    @Contract(pure = true)
-    private @NotNull @Unmodifiable List<Point> findIntraClusterPath(@NotNull GridMap map, Point currentCluster, Point nextCluster) {
-        currentCluster = new Point(currentCluster.getX() * clusterWidth, currentCluster.getY() * clusterHeight);
-        nextCluster = new Point(nextCluster.getX() * clusterWidth, nextCluster.getY() * clusterHeight);
-        map.setClusterWidth(1);
-        map.setClusterHeight(1);
-        return new JPS().planPath(map, map.getGridNode(currentCluster), map.getGridNode(nextCluster));
+    /**
+     * @return 抽象路径上的格子，从起点到终点
+     */
+    private @NotNull int[] abstractPath(@NotNull GridMap map, int index) {
+        int count = 0;
+        for (int i = index; i != GridMap.NO_PARENT; i = map.getParent(i)) count++;
+        int[] path = new int[count];
+        for (int i = index; i != GridMap.NO_PARENT; i = map.getParent(i)) path[--count] = i;
+        return path;
     }
 
-    @Contract(pure = true)
-    private @Nullable GridNode getClusterEntrance(@NotNull GridMap map, int clusterId) {
-        return null;
+    /**
+     * 把抽象路径还原成格子路径，跨簇的一段是相邻的两个过渡点，其余每段在一个簇内重新搜索
+     *
+     * @param startSearch 从起点出发的簇内搜索，第一段直接沿用
+     * @return 不含起点的路径
+     */
+    private @NotNull List<Point> refinePath(@NotNull GridMap map, @NotNull ClusterGraph graph,
+                                            @NotNull ClusterGraph.LocalSearch startSearch, @NotNull int[] abstractPath) {
+        List<Point> path = new ArrayList<>();
+        int[] segment = new int[startSearch.capacity()];
+        for (int k = 1; k < abstractPath.length; k++) {
+            int from = abstractPath[k - 1];
+            int to = abstractPath[k];
+            if (graph.clusterOf(from) != graph.clusterOf(to)) {
+                path.add(new Point(map.getX(to), map.getY(to)));
+                continue;
+            }
+            ClusterGraph.LocalSearch search = startSearch;
+            if (k > 1) {
+                //抽象搜索已经结束，从终点出发的搜索不再需要，借用它的槽位
+                search = graph.localSearch(from, ClusterGraph.END_SEARCH);
+                search.run(from, to);
+            }
+            if (segment.length < search.capacity()) segment = new int[search.capacity()];
+            int count = search.pathTo(to, segment);
+            for (int i = 0; i < count; i++) {
+                path.add(new Point(map.getX(segment[i]), map.getY(segment[i])));
+            }
+        }
+        return path;
     }
 }
@@ -2,8 +2,10 @@ package ncepusa.distributedcars.navigator.algorithm;
 
 import ncepusa.distributedcars.navigator.data_structures.GridMap;
 import ncepusa.distributedcars.navigator.data_structures.GridNode;
+import ncepusa.distributedcars.navigator.data_structures.IndexedMinHeap;
+import ncepusa.distributedcars.navigator.data_structures.JumpDistanceTable;
+import ncepusa.distributedcars.navigator.data_structures.ObstacleBitboard;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.geo.Point;
@@ -12,13 +14,21 @@ import java.util.*;
 
 /**
  * <p>JPS(jump point search)算法</p>
+ * <p>横向和纵向的跳跃在按行、按列打包的障碍物位板上按64位字扫描，跳跃过程是迭代的</p>
  *
  * @author 0109
  * @since 2025-06-01
  */
 public class JPS implements PathPlanningStrategy {
     private static final Logger logger = LoggerFactory.getLogger(JPS.class);
-    private final int[][] DIRECTIONS = {
+    /**
+     * 该方向上没有跳点
+     */
+    protected static final int NO_JUMP_POINT = -1;
+    /**
+     * 8个方向，顺序与 {@link JumpDistanceTable#DIRECTIONS} 一致
+     */
+    private static final int[][] DIRECTIONS = {
             {0, 1}, {1, 0}, {0, -1}, {-1, 0},
             {1, 1}, {1, -1}, {-1, -1}, {-1, 1}
     };
@@ -27,32 +37,37 @@ public class JPS implements PathPlanningStrategy {
         if (start.equals(end)) {
             return List.of();
         }
-        PriorityQueue<GridNode> openList = new PriorityQueue<>();
-        Set<GridNode> closedSet = new HashSet<>();
+        int startIndex = start.getIndex();
+        int endIndex = end.getIndex();
+        IndexedMinHeap openList = IndexedMinHeap.forCurrentThread(map.getWidth() * map.getHeight());
 
-        start.setG(0);
-        start.setH(map.diagonalDistance(start, end));
-        openList.add(start);
+        map.resetSearchState();
+        map.setG(startIndex, 0);
+        map.setParent(startIndex, GridMap.NO_PARENT);
+        int[] jumpPoints = new int[8];
+        double startH = map.diagonalDistance(startIndex, endIndex);
+        openList.push(startIndex, startH, startH);
 
         while (!openList.isEmpty()) {
-            GridNode current = openList.poll();
-            if (current.equals(end)) {
+            int current = openList.poll();
+            if (current == endIndex) {
                 return reconstructFullPath(current, map);
             }
-            closedSet.add(current);
-            List<GridNode> jumpPoints = identifyJumpPoints(map ,current, end);
-
-            for (GridNode jumpPoint : jumpPoints) {
-                if (closedSet.contains(jumpPoint)) continue;
-                double newCost = current.getG() +
-                        Math.min(Math.abs(current.getX() - jumpPoint.getX()), Math.abs(current.getY() - jumpPoint.getY())) * Math.sqrt(2) +
-                        Math.abs(Math.abs(current.getX() - jumpPoint.getX()) - Math.abs(current.getY() - jumpPoint.getY()));
+            map.close(current);
+            int jumpPointCount = identifyJumpPoints(map, current, endIndex, jumpPoints);
+
+            for (int i = 0; i < jumpPointCount; i++) {
+                int jumpPoint = jumpPoints[i];
+                if (map.isClosed(jumpPoint)) continue;
+                int dx = Math.abs(map.getX(current) - map.getX(jumpPoint));
+                int dy = Math.abs(map.getY(current) - map.getY(jumpPoint));
+                double newCost = map.getG(current) + Math.min(dx, dy) * Math.sqrt(2) + Math.abs(dx - dy);
                         //(jumpPoint.isVisited() ? 1 : 0);
-                if (newCost < jumpPoint.getG()) {
-                    jumpPoint.setG(newCost);
-                    jumpPoint.setH(map.diagonalDistance(jumpPoint, end));
-                    jumpPoint.setParent(current);
-                    openList.add(jumpPoint);
+                if (newCost < map.getG(jumpPoint)) {
+                    map.setG(jumpPoint, newCost);
+                    map.setParent(jumpPoint, current);
+                    double h = map.diagonalDistance(jumpPoint, endIndex);
+                    openList.push(jumpPoint, newCost + h, h);
                 }
             }
 
@@ -65,70 +80,101 @@ public class JPS implements PathPlanningStrategy {
      * 判断它们中的任何一个是否符合跳点的条件。
      *
      * @param map   表示环境的网格地图，提供对邻居节点的访问
-     * @param current 当前节点，从该节点识别跳点
-     * @param goal  搜索目标节点
-     * @return 作为JPS算法一部分识别出的跳点列表，如果没有找到跳点，则可能为空
+     * @param current 当前格子的下标，从该格子识别跳点
+     * @param goal  目标格子的下标
+     * @param jumpPoints 长度至少为8的缓冲区，用于写入跳点下标
+     * @return 识别出的跳点数量，如果没有找到跳点，则为0
      */
-    private @NotNull List<GridNode> identifyJumpPoints(@NotNull GridMap map, GridNode current, GridNode goal) {
-        List<GridNode> jumpPoints = new ArrayList<>();
-
+    private int identifyJumpPoints(@NotNull GridMap map, int current, int goal, @NotNull int[] jumpPoints) {
+        int count = 0;
         for (int k = 0; k < 8; k++) {
-            int dx = DIRECTIONS[k][0];
-            int dy = DIRECTIONS[k][1];
-            GridNode jumpPoint = jump(map, current, new Point(dx, dy), goal);
-            if (null != jumpPoint && !jumpPoints.contains(jumpPoint)) {
-                jumpPoints.add(jumpPoint);
+            int jumpPoint = jump(map, current, k, goal);
+            if (NO_JUMP_POINT != jumpPoint && !contains(jumpPoints, count, jumpPoint)) {
+                jumpPoints[count++] = jumpPoint;
             }
         }
-        return jumpPoints;
+        return count;
+    }
+
+    private static boolean contains(@NotNull int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) return true;
+        }
+        return false;
     }
 
     /**
      * 在网格地图中识别跳点。
      * 该方法沿着给定方向遍历网格，寻找符合跳点条件的节点。
-     * 如果某个节点是目标节点、具有强制邻居或满足递归条件，则它被识别为跳点。
+     * 如果某个节点是目标节点、具有强制邻居，或者斜向跳跃时它的横向或纵向上有跳点，则它被识别为跳点。
+     * 斜向逐格前进，横向和纵向借助位板一次跳过64个格子，整个过程没有递归，长走廊不会栈溢出。
      *
      * @param map 表示环境的网格地图，提供对邻居节点的访问
-     * @param current 当前节点，从该节点评估跳点
-     * @param direction 从当前节点出发的遍历方向；如果为null，方法返回null
-     * @param goal 在网格中搜索的目标节点
-     * @return 识别出的跳点作为GridNode返回，如果没有找到跳点或方向无效，则返回null
+     * @param current 当前格子的下标，从该格子评估跳点
+     * @param direction 遍历方向的下标
+     * @param goal 目标格子的下标
+     * @return 识别出的跳点的下标，如果没有找到跳点则返回 {@link #NO_JUMP_POINT}
+     */
+    protected int jump(@NotNull GridMap map, int current, int direction, int goal) {
+        ObstacleBitboard bitboard = map.getObstacleBitboard();
+        int dx = DIRECTIONS[direction][0];
+        int dy = DIRECTIONS[direction][1];
+        if (dx == 0 || dy == 0) {
+            return jumpStraight(map, bitboard, map.getX(current), map.getY(current), dx, dy, goal);
+        }
+        while (true) {
+            int newX = map.getX(current) + dx;
+            int newY = map.getY(current) + dy;
+            if (map.isObstacleAt(newX, newY)) return NO_JUMP_POINT;
+            int next = map.toIndex(newX, newY);
+            if (next == goal || map.hasForcedNeighbor(current, dx, dy)) return next;
+
+            // 斜向跳跃时，继续检查横向和纵向是否有跳点
+            if (NO_JUMP_POINT != jumpStraight(map, bitboard, newX, newY, dx, 0, goal)) return next;
+            if (NO_JUMP_POINT != jumpStraight(map, bitboard, newX, newY, 0, dy, goal)) return next;
+            current = next;
+        }
+    }
+
+    /**
+     * <p>横向或纵向跳跃</p>
+     * <p>从 (x, y) 出发沿方向前进，途经的每个格子如果是目标或者两侧有障碍物（强制邻居），就是跳点；
+     * 在此之前遇到障碍物或越界则没有跳点。用位板分别找出第一个障碍物和第一个两侧有障碍物的格子，比较先后即可</p>
      */
-    private @Nullable GridNode jump(@NotNull GridMap map,
-                                    @NotNull GridNode current,
-                                    @NotNull Point direction,
-                                    @NotNull GridNode goal) {
-        int dx = (int) direction.getX();
-        int dy = (int) direction.getY();
-        int newX = current.getX() + dx;
-        int newY = current.getY() + dy;
-        GridNode next = map.getGridNode(newX, newY);
-
-        if (next == null || next.isObstacle()) return null;
-        if (next.equals(goal) || map.hasForcedNeighbor(current, direction)) return next;
-
-        // 如果是斜向跳跃，继续检查横向和纵向是否有跳点
-        if (dx != 0 && dy != 0) {
-            if(null != jump(map, next, new Point(dx, 0), goal)) return next;
-            if(null != jump(map,next, new Point(0, dy), goal)) return next;
+    private int jumpStraight(@NotNull GridMap map, @NotNull ObstacleBitboard bitboard, int x, int y, int dx, int dy, int goal) {
+        int goalX = map.getX(goal);
+        int goalY = map.getY(goal);
+        if (dy == 0) {
+            boolean forward = dx > 0;
+            int from = x + dx;
+            int blocked = bitboard.nextObstacleInRow(y, from, forward);
+            int hit = bitboard.nextObstacleBesideRow(y, from, forward);
+            if (goalY == y && (forward ? goalX >= from && goalX < hit : goalX <= from && goalX > hit)) hit = goalX;
+            return (forward ? hit < blocked : hit > blocked) ? map.toIndex(hit, y) : NO_JUMP_POINT;
+        } else {
+            boolean forward = dy > 0;
+            int from = y + dy;
+            int blocked = bitboard.nextObstacleInColumn(x, from, forward);
+            int hit = bitboard.nextObstacleBesideColumn(x, from, forward);
+            if (goalX == x && (forward ? goalY >= from && goalY < hit : goalY <= from && goalY > hit)) hit = goalY;
+            return (forward ? hit < blocked : hit > blocked) ? map.toIndex(x, hit) : NO_JUMP_POINT;
         }
-        return jump(map,next, direction, goal);
     }
 
     /**
      * 从目标节点回溯到起点，构建完整的路径。
      *
-     * @param endNode 目标节点
+     * @param endIndex 目标格子的下标
      * @param map 网格地图
      * @return 从起点到目标节点的完整路径
      */
-    private @NotNull List<Point> reconstructFullPath(GridNode endNode, GridMap map) {
+    private @NotNull List<Point> reconstructFullPath(int endIndex, GridMap map) {
         List<Point> jumpPoints = new ArrayList<>();
-        GridNode current = endNode;
+        int current = endIndex;
 
-        while (current != null) {
-            jumpPoints.add(new Point(current.getX(), current.getY()));
-            current = current.getParent();
+        while (current != GridMap.NO_PARENT) {
+            jumpPoints.add(new Point(map.getX(current), map.getY(current)));
+            current = map.getParent(current);
         }
         Collections.reverse(jumpPoints);
 
@@ -136,9 +182,7 @@ public class JPS implements PathPlanningStrategy {
         List<Point> fullPath = new ArrayList<>();
 
         for (int i = 0; i < jumpPoints.size() - 1; i++) {
-            GridNode from = map.getGridNode(jumpPoints.get(i));
-            GridNode to = map.getGridNode(jumpPoints.get(i + 1));
-            List<Point> segment = generateFullPathBetween(from, to, map);
+            List<Point> segment = generateFullPathBetween(jumpPoints.get(i), jumpPoints.get(i + 1));
             if (segment.isEmpty()) return Collections.emptyList();
             fullPath.addAll(segment.subList(i == 0 ? 1 : 0, segment.size() - 1));
         }
@@ -154,14 +198,13 @@ public class JPS implements PathPlanningStrategy {
      *
      * @param from 起点
      * @param to 终点
-     * @param map 地图
      * @return 完整路径
      */
-    private @NotNull List<Point> generateFullPathBetween(@NotNull GridNode from, @NotNull GridNode to, GridMap map) {
+    private @NotNull List<Point> generateFullPathBetween(@NotNull Point from, @NotNull Point to) {
         List<Point> segment = new ArrayList<>();
 
-        int x0 = from.getX(), y0 = from.getY();
-        int x1 = to.getX(), y1 = to.getY();
+        int x0 = (int) from.getX(), y0 = (int) from.getY();
+        int x1 = (int) to.getX(), y1 = (int) to.getY();
 
         int dx = Math.abs(x1 - x0);
         int dy = Math.abs(y1 - y0);
@@ -0,0 +1,79 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.JumpDistanceTable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * <p>JPS+算法</p>
+ * <p>搜索过程与 {@link JPS} 相同，跳跃不再扫描地图，而是查预先计算好的 {@link JumpDistanceTable}，
+ * 再根据终点的位置修正：终点在跳跃路线上、且在跳点之前时，终点就是跳点。路径与JPS完全一致</p>
+ * <p>跳跃距离表按障碍物版本构建一次，所有线程共享；地图太大无法建表时退回到JPS的扫描</p>
+ *
+ * @author 0109
+ * @since 2025-06-01
+ */
+public class JPSPlus extends JPS {
+    @Override
+    protected int jump(@NotNull GridMap map, int current, int direction, int goal) {
+        if (!JumpDistanceTable.supports(map.getWidth(), map.getHeight())) {
+            return super.jump(map, current, direction, goal);
+        }
+        JumpDistanceTable table = map.getJumpDistances();
+        int dx = JumpDistanceTable.DIRECTIONS[direction][0];
+        int dy = JumpDistanceTable.DIRECTIONS[direction][1];
+        int x = map.getX(current);
+        int y = map.getY(current);
+        int goalX = map.getX(goal);
+        int goalY = map.getY(goal);
+        int distance = table.get(current, direction);
+
+        if (dx == 0 || dy == 0) {
+            int steps = distance > 0 ? distance : Integer.MAX_VALUE;
+            if (reachesStraight(table, current, direction, dx, dy, x, y, goalX, goalY)) {
+                steps = dx != 0 ? (goalX - x) * dx : (goalY - y) * dy;
+            }
+            return steps == Integer.MAX_VALUE ? NO_JUMP_POINT : map.toIndex(x + dx * steps, y + dy * steps);
+        }
+
+        //斜向走到第k步时，终点在这一步所在的行或列上，且横向或纵向能直接走到终点，第k步就是跳点
+        int limit = Math.abs(distance);
+        int steps = distance > 0 ? distance : Integer.MAX_VALUE;
+        int k = (goalY - y) * dy;
+        if (k >= 1 && k <= limit && k < steps && reachesAfterDiagonal(map, table, x + dx * k, goalY, dx, 0, goalX, goalY)) {
+            steps = k;
+        }
+        k = (goalX - x) * dx;
+        if (k >= 1 && k <= limit && k < steps && reachesAfterDiagonal(map, table, goalX, y + dy * k, 0, dy, goalX, goalY)) {
+            steps = k;
+        }
+        return steps == Integer.MAX_VALUE ? NO_JUMP_POINT : map.toIndex(x + dx * steps, y + dy * steps);
+    }
+
+    /**
+     * 从 (x, y) 横向或纵向出发，不经过障碍物和跳点之后的格子能否走到终点
+     */
+    private boolean reachesStraight(@NotNull JumpDistanceTable table, int index, int direction,
+                                    int dx, int dy, int x, int y, int goalX, int goalY) {
+        int steps;
+        if (dx != 0) {
+            if (goalY != y) return false;
+            steps = (goalX - x) * dx;
+        } else {
+            if (goalX != x) return false;
+            steps = (goalY - y) * dy;
+        }
+        int distance = table.get(index, direction);
+        return steps >= 1 && steps <= Math.abs(distance);
+    }
+
+    /**
+     * 斜向走到 (x, y) 后，该格子本身是终点，或者沿 (dx, dy) 横向或纵向能走到终点
+     */
+    private boolean reachesAfterDiagonal(@NotNull GridMap map, @NotNull JumpDistanceTable table, int x, int y,
+                                         int dx, int dy, int goalX, int goalY) {
+        if (x == goalX && y == goalY) return true;
+        int index = map.toIndex(x, y);
+        return reachesStraight(table, index, JumpDistanceTable.directionOf(dx, dy), dx, dy, x, y, goalX, goalY);
+    }
+}
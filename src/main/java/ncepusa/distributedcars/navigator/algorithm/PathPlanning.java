@@ -2,7 +2,6 @@ package ncepusa.distributedcars.navigator.algorithm;
 
 import ncepusa.distributedcars.navigator.data_structures.GridMap;
 import ncepusa.distributedcars.navigator.data_structures.GridNode;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.data.geo.Point;
 
@@ -11,13 +10,21 @@ import java.util.List;
 
 /**
  * <p>算法规划类</p>
+ * <p>每个工作线程通过 {@link #forCurrentThread()} 使用自己的实例和自己的策略对象，算法由每次请求传入，
+ * 线程之间没有共享的可变状态。搜索用的g值、父节点和开放列表同样是线程私有的（见 {@code SearchState}、{@code IndexedMinHeap}），
+ * 按该线程见过的最大地图分配，之后的请求直接复用</p>
  *
  * @author 0109
  * @since 2025-05-21
  */
 public class PathPlanning {
+    private static final ThreadLocal<PathPlanning> CURRENT = ThreadLocal.withInitial(PathPlanning::new);
+    /**
+     * 算法下标无效时使用的算法
+     */
+    public static final int DEFAULT_STRATEGY = 0;
+
     private final List<PathPlanningStrategy> pathPlannings;
-    private int currentIndex = 0;
 
     public PathPlanning() {
         pathPlannings = new ArrayList<>();
@@ -26,15 +33,56 @@ public class PathPlanning {
         pathPlannings.add(new Dijkstra());
         pathPlannings.add(new BFS());
         pathPlannings.add(new Floyd());
+        pathPlannings.add(new JPSPlus());
+        pathPlannings.add(new HPAStar());
+        pathPlannings.add(new DStarLite());
+        pathPlannings.add(new BidirectionalAStar());
+    }
+
+    /**
+     * @return 当前线程的路径规划实例
+     */
+    public static @NotNull PathPlanning forCurrentThread() {
+        return CURRENT.get();
     }
 
-    public List<Point> planPath(@NotNull GridMap map, GridNode start, GridNode end) {
-        return pathPlannings.get(currentIndex).planPath(map, start, end);
+    /**
+     * 用指定的算法规划路径
+     *
+     * @param index 算法下标，无效时使用 {@link #DEFAULT_STRATEGY}
+     * @param map 网格地图
+     * @param start 起点
+     * @param end 终点
+     * @return 不含起点、含终点的路径，不可达时为空
+     */
+    public List<Point> planPath(int index, @NotNull GridMap map, GridNode start, GridNode end) {
+        return strategy(index).planPath(map, start, end);
+    }
+
+    /**
+     * <p>为地图选出终点：指定的算法沿用的终点仍然是合法候选时直接使用，否则按 {@link GridMap#electEndpoint(int, int)} 重新选举</p>
+     * <p>结果写入地图的终点，没有可选的终点时地图的终点保持为 null</p>
+     *
+     * @param index 算法下标，无效时使用 {@link #DEFAULT_STRATEGY}
+     * @param map 网格地图
+     * @param carNumbers 小车数量
+     * @param carid 当前小车的id
+     * @param allowRetained 是否允许沿用终点，上一次选出的终点不可达后重试时应为 false
+     */
+    public void electEndpoint(int index, @NotNull GridMap map, int carNumbers, int carid, boolean allowRetained) {
+        map.setEnd(null);
+        int retained = allowRetained ? strategy(index).retainedEndpoint(map) : GridMap.NO_PARENT;
+        if (retained != GridMap.NO_PARENT && map.isEndpointCandidate(retained)) {
+            map.setEnd(new Point(map.getX(retained), map.getY(retained)));
+        } else {
+            map.electEndpoint(carNumbers, carid);
+        }
     }
 
-    public void setStrategy(int index) {
-        if (index >= 0 && index < pathPlannings.size()) {
-            currentIndex = index;
+    private @NotNull PathPlanningStrategy strategy(int index) {
+        if (index < 0 || index >= pathPlannings.size()) {
+            index = DEFAULT_STRATEGY;
         }
+        return pathPlannings.get(index);
     }
 }
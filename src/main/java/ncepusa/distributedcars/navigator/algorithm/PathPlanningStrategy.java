@@ -2,6 +2,7 @@ package ncepusa.distributedcars.navigator.algorithm;
 
 import ncepusa.distributedcars.navigator.data_structures.GridMap;
 import ncepusa.distributedcars.navigator.data_structures.GridNode;
+import org.jetbrains.annotations.NotNull;
 import org.springframework.data.geo.Point;
 
 import java.util.List;
@@ -14,4 +15,15 @@ import java.util.List;
  */
 public interface PathPlanningStrategy {
     List<Point> planPath(GridMap map, GridNode start, GridNode end);
+
+    /**
+     * <p>返回算法希望沿用的终点，调用方在它仍然是合法候选时不再重新选举</p>
+     * <p>保存了跨消息搜索状态的算法用它避免终点来回变化导致的从头搜索，默认不沿用</p>
+     *
+     * @param map 本次请求的网格地图
+     * @return 终点下标，不沿用时返回 {@link GridMap#NO_PARENT}
+     */
+    default int retainedEndpoint(@NotNull GridMap map) {
+        return GridMap.NO_PARENT;
+    }
 }
\ No newline at end of file
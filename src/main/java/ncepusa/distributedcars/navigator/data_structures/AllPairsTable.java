@@ -0,0 +1,191 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * <p>小地图上所有空闲格子两两之间的最短距离和下一步</p>
+ * <p>空闲格子重新编号为连续的节点，距离矩阵是一维的 {@code float} 数组，下一步矩阵只保存从起点出发第一步的方向（0~7），
+ * 每对节点占5字节。查询时沿方向一步一步走到终点，代价与路径长度成正比</p>
+ * <p>用分块的Floyd-Warshall计算：每一轮先算对角线上的块，再算与它同行、同列的块，最后算其余的块，
+ * 后两步中各块互不依赖，在公共的fork-join线程池中并行计算，每块 {@link #BLOCK} x {@link #BLOCK} 个元素，
+ * 内层循环连续访问两行，能放进缓存</p>
+ * <p>移动规则与 {@link GridMap#getNeighborIndices(int, int[])} 相同（直走1，斜走√2，不能穿角），不包含已探索格子的额外代价，
+ * 与Floyd在大地图上改用的Dijkstra代价相同。
+ * 表只依赖障碍物地图，由 {@link MapSnapshot} 在第一次使用时构建，障碍物版本相同的快照共享同一张表。
+ * 计算量是格子数的三次方，地图的格子数超过 {@link #MAX_CELLS} 时不支持</p>
+ *
+ * @author 0109
+ * @since 2025-06-08
+ */
+public final class AllPairsTable {
+    /**
+     * 支持的最大格子数
+     */
+    public static final int MAX_CELLS = 2304;
+    private static final int BLOCK = 64;
+    private static final float UNREACHABLE = Float.POSITIVE_INFINITY;
+    private static final byte NO_STEP = -1;
+    private static final int[] DX = {0, 1, 0, -1, 1, 1, -1, -1};
+    private static final int[] DY = {1, 0, -1, 0, 1, -1, -1, 1};
+
+    private final int width;
+    private final int height;
+    /**
+     * 每个格子的节点编号，障碍物为-1
+     */
+    private final int[] nodes;
+    /**
+     * 矩阵一行的长度，节点数向上取整到 {@link #BLOCK} 的倍数
+     */
+    private final int stride;
+    /**
+     * 节点 i 到节点 j 的距离保存在 {@code distances[i * stride + j]}
+     */
+    private final float[] distances;
+    /**
+     * 节点 i 到节点 j 的最短路径第一步的方向，下标与 {@link #distances} 相同
+     */
+    private final byte[] steps;
+
+    private AllPairsTable(int width, int height, @NotNull int[] nodes, int nodeCount) {
+        this.width = width;
+        this.height = height;
+        this.nodes = nodes;
+        this.stride = (nodeCount + BLOCK - 1) / BLOCK * BLOCK;
+        this.distances = new float[stride * stride];
+        this.steps = new byte[stride * stride];
+    }
+
+    public static boolean supports(int width, int height) {
+        return (long) width * height <= MAX_CELLS;
+    }
+
+    /**
+     * 构建全源最短路径表
+     *
+     * @param obstacles 障碍物位图
+     * @param width 地图宽度
+     * @param height 地图高度
+     * @return 全源最短路径表
+     * @throws IllegalArgumentException 地图的格子数超过 {@link #MAX_CELLS}
+     */
+    public static @NotNull AllPairsTable build(@NotNull PackedBitmap obstacles, int width, int height) {
+        if (!supports(width, height)) {
+            throw new IllegalArgumentException("map " + width + "x" + height + " is too large for an all-pairs table");
+        }
+        int[] nodes = new int[width * height];
+        int nodeCount = 0;
+        for (int index = 0; index < nodes.length; index++) {
+            nodes[index] = obstacles.get(index) ? -1 : nodeCount++;
+        }
+        AllPairsTable table = new AllPairsTable(width, height, nodes, nodeCount);
+        table.initialize();
+        table.solve();
+        return table;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @param from 起点格子的下标
+     * @param to 终点格子的下标
+     * @return 最短距离，任意一个格子是障碍物或两者不连通时为正无穷
+     */
+    public double getDistance(int from, int to) {
+        int source = nodes[from];
+        int target = nodes[to];
+        if (source < 0 || target < 0) return Double.POSITIVE_INFINITY;
+        return distances[source * stride + target];
+    }
+
+    /**
+     * @param from 当前格子的下标
+     * @param to 终点格子的下标
+     * @return 沿最短路径走一步到达的格子的下标，已在终点或不可达时返回-1
+     */
+    public int nextStep(int from, int to) {
+        int source = nodes[from];
+        int target = nodes[to];
+        if (source < 0 || target < 0) return -1;
+        byte direction = steps[source * stride + target];
+        if (direction == NO_STEP) return -1;
+        return from + DY[direction] * width + DX[direction];
+    }
+
+    /**
+     * 距离矩阵的对角线为0，相邻格子为一步的代价，其余为正无穷
+     */
+    private void initialize() {
+        Arrays.fill(distances, UNREACHABLE);
+        Arrays.fill(steps, NO_STEP);
+        for (int index = 0; index < nodes.length; index++) {
+            int source = nodes[index];
+            if (source < 0) continue;
+            distances[source * stride + source] = 0;
+            int x = index % width;
+            int y = index / width;
+            for (byte direction = 0; direction < DX.length; direction++) {
+                int nx = x + DX[direction];
+                int ny = y + DY[direction];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+                int target = nodes[ny * width + nx];
+                if (target < 0) continue;
+                boolean diagonal = direction >= 4;
+                if (diagonal && (nodes[y * width + nx] < 0 || nodes[ny * width + x] < 0)) continue;
+                distances[source * stride + target] = diagonal ? (float) Math.sqrt(2) : 1;
+                steps[source * stride + target] = direction;
+            }
+        }
+    }
+
+    private void solve() {
+        int blocks = stride / BLOCK;
+        for (int pivot = 0; pivot < blocks; pivot++) {
+            int k = pivot;
+            relax(k, k, k);
+            IntStream.range(0, blocks).parallel().forEach(b -> {
+                if (b == k) return;
+                relax(k, b, k);
+                relax(b, k, k);
+            });
+            IntStream.range(0, blocks * blocks).parallel().forEach(p -> {
+                int row = p / blocks;
+                int column = p % blocks;
+                if (row != k && column != k) relax(row, column, k);
+            });
+        }
+    }
+
+    /**
+     * 用第 pivot 块中的节点作为中转点，更新第 row 行第 column 列的块
+     */
+    private void relax(int row, int column, int pivot) {
+        int columnStart = column * BLOCK;
+        int columnEnd = columnStart + BLOCK;
+        for (int k = pivot * BLOCK, kEnd = k + BLOCK; k < kEnd; k++) {
+            int kOffset = k * stride;
+            for (int i = row * BLOCK, iEnd = i + BLOCK; i < iEnd; i++) {
+                int iOffset = i * stride;
+                float viaK = distances[iOffset + k];
+                if (viaK == UNREACHABLE) continue;
+                byte step = steps[iOffset + k];
+                for (int j = columnStart; j < columnEnd; j++) {
+                    float candidate = viaK + distances[kOffset + j];
+                    if (candidate < distances[iOffset + j]) {
+                        distances[iOffset + j] = candidate;
+                        steps[iOffset + j] = step;
+                    }
+                }
+            }
+        }
+    }
+}
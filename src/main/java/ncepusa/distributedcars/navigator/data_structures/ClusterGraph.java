@@ -0,0 +1,529 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * <p>HPA*使用的抽象簇图</p>
+ * <p>地图按 {@link GridMap#clusterSideFor(int)} 切分成簇，相邻两个簇的公共边界上，两侧都可通行的连续格子构成一个入口，
+ * 入口较窄时在中点放一对过渡点，较宽时在两端各放一对。过渡点就是抽象图的节点，跨边界的一对过渡点之间代价为1，
+ * 同一个簇内的节点两两之间的代价是只在簇内移动的最短距离</p>
+ * <p>构建时只放置过渡点，簇内距离按出发的节点逐行计算：搜索第一次扩展某个节点时才在簇内搜索一次并缓存这一行，
+ * 大地图上一次查询只会扩展路径附近的少量节点</p>
+ * <p>移动规则与其他算法一致：8方向移动，斜向移动不能穿过障碍物的拐角，直走代价1，斜走代价√2</p>
+ * <p>簇图是不可变的，由 {@link MapSnapshot} 按障碍物版本构建并在所有线程之间共享。障碍物变化时
+ * {@link #update(PackedBitmap, int[])} 只重新计算变化的格子所在的簇、这些簇的边界以及边界另一侧的簇，其余簇连同已经算好的距离直接复用</p>
+ *
+ * @author 0109
+ * @since 2025-06-04
+ */
+public final class ClusterGraph {
+    /**
+     * 入口宽度达到该值时放两对过渡点
+     */
+    private static final int WIDE_ENTRANCE = 6;
+    private static final int[] NO_CELLS = new int[0];
+    /**
+     * 簇内搜索的槽位：从起点出发的搜索
+     */
+    public static final int START_SEARCH = 0;
+    /**
+     * 簇内搜索的槽位：从终点出发的搜索
+     */
+    public static final int END_SEARCH = 1;
+    /**
+     * 簇内搜索的槽位：计算簇内距离，{@link #getDistances(int, int)} 专用
+     */
+    private static final int DISTANCE_SEARCH = 2;
+    private static final ThreadLocal<LocalSearch[]> LOCAL_SEARCHES = ThreadLocal.withInitial(() -> new LocalSearch[3]);
+
+    private final PackedBitmap obstacles;
+    private final int width;
+    private final int height;
+    private final int clusterWidth;
+    private final int clusterHeight;
+    private final int clustersX;
+    private final int clustersY;
+    /**
+     * 簇 (cx, cy) 与 (cx + 1, cy) 之间的过渡点对，依次为左侧格子、右侧格子
+     */
+    private final int[][] verticalBorders;
+    /**
+     * 簇 (cx, cy) 与 (cx, cy + 1) 之间的过渡点对，依次为上方格子、下方格子
+     */
+    private final int[][] horizontalBorders;
+    private final Cluster[] clusters;
+
+    /**
+     * 一个簇内的所有节点
+     */
+    public static final class Cluster {
+        /**
+         * 节点的格子下标，升序
+         */
+        private final int[] nodes;
+        /**
+         * 每个节点在相邻簇中对应的过渡点
+         */
+        private final int[][] partners;
+        /**
+         * 第i行是第i个节点只在簇内移动到其他节点的最短距离，不可达为 {@link Float#POSITIVE_INFINITY}，第一次使用时计算
+         */
+        private final AtomicReferenceArray<float[]> distances;
+
+        private Cluster(int[] nodes, int[][] partners, AtomicReferenceArray<float[]> distances) {
+            this.nodes = nodes;
+            this.partners = partners;
+            this.distances = distances;
+        }
+
+        public int size() {
+            return nodes.length;
+        }
+
+        public int getNode(int i) {
+            return nodes[i];
+        }
+
+        /**
+         * @return 格子在本簇节点中的序号，不是节点时返回负数
+         */
+        public int indexOf(int cell) {
+            return Arrays.binarySearch(nodes, cell);
+        }
+
+        public @NotNull int[] getPartners(int i) {
+            return partners[i];
+        }
+    }
+
+    private ClusterGraph(@NotNull PackedBitmap obstacles, int width, int height, int clusterWidth, int clusterHeight,
+                         int[][] verticalBorders, int[][] horizontalBorders, Cluster[] clusters) {
+        this.obstacles = obstacles;
+        this.width = width;
+        this.height = height;
+        this.clusterWidth = clusterWidth;
+        this.clusterHeight = clusterHeight;
+        this.clustersX = (width + clusterWidth - 1) / clusterWidth;
+        this.clustersY = (height + clusterHeight - 1) / clusterHeight;
+        this.verticalBorders = verticalBorders;
+        this.horizontalBorders = horizontalBorders;
+        this.clusters = clusters;
+    }
+
+    /**
+     * 构建整张簇图，各个簇并行计算
+     *
+     * @param obstacles 障碍物位图
+     * @param width 地图宽度
+     * @param height 地图高度
+     * @return 簇图
+     */
+    public static @NotNull ClusterGraph build(@NotNull PackedBitmap obstacles, int width, int height) {
+        int clusterWidth = GridMap.clusterSideFor(width);
+        int clusterHeight = GridMap.clusterSideFor(height);
+        int clustersX = (width + clusterWidth - 1) / clusterWidth;
+        int clustersY = (height + clusterHeight - 1) / clusterHeight;
+        ClusterGraph graph = new ClusterGraph(obstacles, width, height, clusterWidth, clusterHeight,
+                new int[clustersX * clustersY][], new int[clustersX * clustersY][], new Cluster[clustersX * clustersY]);
+        IntStream.range(0, clustersX * clustersY).parallel().forEach(graph::computeBorders);
+        IntStream.range(0, clustersX * clustersY).parallel().forEach(c -> graph.clusters[c] = graph.computeCluster(c, null));
+        return graph;
+    }
+
+    /**
+     * 障碍物变化后生成新的簇图，只重新计算受影响的簇
+     *
+     * @param newObstacles 新的障碍物位图，尺寸不变
+     * @param changedCells 障碍物状态发生变化的格子
+     * @return 新的簇图
+     */
+    public @NotNull ClusterGraph update(@NotNull PackedBitmap newObstacles, @NotNull int[] changedCells) {
+        BitSet dirty = new BitSet(clusters.length);
+        for (int cell : changedCells) {
+            dirty.set(clusterOf(cell));
+        }
+        ClusterGraph graph = new ClusterGraph(newObstacles, width, height, clusterWidth, clusterHeight,
+                verticalBorders.clone(), horizontalBorders.clone(), clusters.clone());
+        //变化的簇向右、向下的边界由自己计算，向左、向上的边界由左边、上边的簇计算
+        BitSet borderOwners = new BitSet(clusters.length);
+        BitSet affected = new BitSet(clusters.length);
+        dirty.stream().forEach(c -> {
+            int cx = c % clustersX;
+            int cy = c / clustersX;
+            borderOwners.set(c);
+            affected.set(c);
+            if (cx > 0) { borderOwners.set(c - 1); affected.set(c - 1); }
+            if (cy > 0) { borderOwners.set(c - clustersX); affected.set(c - clustersX); }
+            if (cx + 1 < clustersX) affected.set(c + 1);
+            if (cy + 1 < clustersY) affected.set(c + clustersX);
+        });
+        borderOwners.stream().parallel().forEach(graph::computeBorders);
+        affected.stream().parallel().forEach(c ->
+                graph.clusters[c] = graph.computeCluster(c, dirty.get(c) ? null : clusters[c]));
+        return graph;
+    }
+
+    /**
+     * 计算簇 c 向右、向下两条边界上的过渡点
+     */
+    private void computeBorders(int c) {
+        int cx = c % clustersX;
+        int cy = c / clustersX;
+        int x0 = cx * clusterWidth;
+        int y0 = cy * clusterHeight;
+        int x1 = Math.min(x0 + clusterWidth, width);
+        int y1 = Math.min(y0 + clusterHeight, height);
+        verticalBorders[c] = cx + 1 < clustersX ? findTransitions(x1 - 1, y0, 0, 1, y1 - y0, 1, 0) : NO_CELLS;
+        horizontalBorders[c] = cy + 1 < clustersY ? findTransitions(x0, y1 - 1, 1, 0, x1 - x0, 0, 1) : NO_CELLS;
+    }
+
+    /**
+     * 沿边界寻找入口并放置过渡点
+     *
+     * @param x 边界内侧第一个格子的x坐标
+     * @param y 边界内侧第一个格子的y坐标
+     * @param stepX 沿边界前进的x分量
+     * @param stepY 沿边界前进的y分量
+     * @param length 边界长度
+     * @param crossX 跨过边界的x分量
+     * @param crossY 跨过边界的y分量
+     * @return 过渡点对
+     */
+    private int[] findTransitions(int x, int y, int stepX, int stepY, int length, int crossX, int crossY) {
+        int[] pairs = new int[length * 2];
+        int count = 0;
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean open = i < length && isFree(x + stepX * i, y + stepY * i)
+                    && isFree(x + stepX * i + crossX, y + stepY * i + crossY);
+            if (open && runStart < 0) {
+                runStart = i;
+            } else if (!open && runStart >= 0) {
+                int runLength = i - runStart;
+                if (runLength >= WIDE_ENTRANCE) {
+                    count = addPair(pairs, count, x + stepX * runStart, y + stepY * runStart, crossX, crossY);
+                    count = addPair(pairs, count, x + stepX * (i - 1), y + stepY * (i - 1), crossX, crossY);
+                } else {
+                    int middle = runStart + runLength / 2;
+                    count = addPair(pairs, count, x + stepX * middle, y + stepY * middle, crossX, crossY);
+                }
+                runStart = -1;
+            }
+        }
+        return Arrays.copyOf(pairs, count);
+    }
+
+    private int addPair(int[] pairs, int count, int x, int y, int crossX, int crossY) {
+        pairs[count++] = y * width + x;
+        pairs[count++] = (y + crossY) * width + x + crossX;
+        return count;
+    }
+
+    /**
+     * 收集簇 c 四条边界上的过渡点
+     *
+     * @param previous 簇内格子没有变化时的旧簇，节点相同则直接复用距离
+     */
+    private Cluster computeCluster(int c, @Nullable Cluster previous) {
+        int cx = c % clustersX;
+        int cy = c / clustersX;
+        int[] pairs = new int[0];
+        pairs = appendSide(pairs, verticalBorders[c], 0);
+        pairs = appendSide(pairs, horizontalBorders[c], 0);
+        if (cx > 0) pairs = appendSide(pairs, verticalBorders[c - 1], 1);
+        if (cy > 0) pairs = appendSide(pairs, horizontalBorders[c - clustersX], 1);
+
+        //pairs中依次是（本簇的格子，相邻簇的格子），按格子排序后合并同一个格子的多个过渡点
+        long[] sorted = new long[pairs.length / 2];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ((long) pairs[2 * i] << 32) | (pairs[2 * i + 1] & 0xffffffffL);
+        }
+        Arrays.sort(sorted);
+        int[] nodes = new int[sorted.length];
+        int[][] partners = new int[sorted.length][];
+        int count = 0;
+        for (int i = 0; i < sorted.length; ) {
+            int cell = (int) (sorted[i] >>> 32);
+            int j = i;
+            while (j < sorted.length && (int) (sorted[j] >>> 32) == cell) j++;
+            int[] cellPartners = new int[j - i];
+            for (int k = i; k < j; k++) cellPartners[k - i] = (int) sorted[k];
+            nodes[count] = cell;
+            partners[count] = cellPartners;
+            count++;
+            i = j;
+        }
+        nodes = Arrays.copyOf(nodes, count);
+        partners = Arrays.copyOf(partners, count);
+
+        if (null != previous && Arrays.equals(previous.nodes, nodes)) {
+            return new Cluster(nodes, partners, previous.distances);
+        }
+        return new Cluster(nodes, partners, new AtomicReferenceArray<>(count));
+    }
+
+    /**
+     * @param side 0取过渡点对中的第一个格子作为本簇的节点，1取第二个
+     */
+    private static int[] appendSide(int[] pairs, int[] border, int side) {
+        int[] result = Arrays.copyOf(pairs, pairs.length + border.length);
+        for (int i = 0; i < border.length; i += 2) {
+            result[pairs.length + i] = border[i + side];
+            result[pairs.length + i + 1] = border[i + 1 - side];
+        }
+        return result;
+    }
+
+    private boolean isFree(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height && !obstacles.get(y * width + x);
+    }
+
+    /**
+     * @return 格子所在簇的编号
+     */
+    public int clusterOf(int cell) {
+        return (cell % width) / clusterWidth + (cell / width) / clusterHeight * clustersX;
+    }
+
+    public @NotNull Cluster getCluster(int c) {
+        return clusters[c];
+    }
+
+    /**
+     * 获取簇内第i个节点到本簇其他节点的距离，还没有计算时在簇内搜索一次，并发调用时可能重复计算，结果相同
+     *
+     * @param c 簇的编号
+     * @param i 节点在簇内的序号
+     * @return 到本簇第j个节点的距离在第j个位置，只读
+     */
+    public @NotNull float[] getDistances(int c, int i) {
+        Cluster cluster = clusters[c];
+        float[] row = cluster.distances.get(i);
+        if (null == row) {
+            LocalSearch search = localSearch(cluster.nodes[i], DISTANCE_SEARCH);
+            search.run(cluster.nodes[i], -1);
+            row = new float[cluster.nodes.length];
+            for (int j = 0; j < row.length; j++) {
+                row[j] = (float) search.distanceTo(cluster.nodes[j]);
+            }
+            cluster.distances.set(i, row);
+        }
+        return row;
+    }
+
+    /**
+     * <p>取出当前线程指定槽位的簇内搜索，并切换到格子所在的簇</p>
+     * <p>每个线程每个槽位只有一个实例，数组按见过的最大的簇分配，之后的查询直接复用。
+     * 同一槽位再次取出时之前的搜索结果失效，需要同时保留结果的搜索使用不同的槽位</p>
+     *
+     * @param cell 簇内任意一个格子
+     * @param slot 槽位，{@link #START_SEARCH} 或 {@link #END_SEARCH}
+     * @return 簇内搜索
+     */
+    public @NotNull LocalSearch localSearch(int cell, int slot) {
+        LocalSearch[] searches = LOCAL_SEARCHES.get();
+        LocalSearch search = searches[slot];
+        if (null == search) {
+            search = new LocalSearch();
+            searches[slot] = search;
+        }
+        search.bind(this, clusterOf(cell));
+        return search;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getClusterWidth() {
+        return clusterWidth;
+    }
+
+    public int getClusterHeight() {
+        return clusterHeight;
+    }
+
+    /**
+     * <p>只在一个簇内移动的搜索</p>
+     * <p>切换簇时把簇内格子是否可通行展开到四周多留一圈的局部数组里，边框一律视为障碍物，扩展邻居时不用再判断越界</p>
+     * <p>距离和关闭标记带代数戳，与 {@link SearchState} 相同，开始新的搜索时只把代数加一</p>
+     */
+    public static final class LocalSearch {
+        private static final double SQRT2 = Math.sqrt(2);
+
+        private int width;
+        private int x0;
+        private int y0;
+        private int x1;
+        private int y1;
+        /**
+         * 局部数组的宽度，比簇宽2
+         */
+        private int paddedWidth;
+        private boolean[] free = new boolean[0];
+        private final int[] offsets = new int[8];
+        private double[] distances = new double[0];
+        private int[] parents = new int[0];
+        /**
+         * 距离的代数戳，等于当前代数的距离有效
+         */
+        private int[] stamp = new int[0];
+        /**
+         * 关闭标记的代数戳，等于当前代数的格子已关闭
+         */
+        private int[] closedStamp = new int[0];
+        private int epoch = 1;
+        private IndexedMinHeap openList = new IndexedMinHeap(0);
+
+        private LocalSearch() {
+        }
+
+        /**
+         * 切换到图中的第c个簇，容量不足时重新分配
+         */
+        private void bind(@NotNull ClusterGraph graph, int c) {
+            this.width = graph.width;
+            this.x0 = c % graph.clustersX * graph.clusterWidth;
+            this.y0 = c / graph.clustersX * graph.clusterHeight;
+            this.x1 = Math.min(x0 + graph.clusterWidth, graph.width);
+            this.y1 = Math.min(y0 + graph.clusterHeight, graph.height);
+            this.paddedWidth = x1 - x0 + 2;
+            int size = paddedWidth * (y1 - y0 + 2);
+            if (free.length < size) {
+                free = new boolean[size];
+                distances = new double[size];
+                parents = new int[size];
+                stamp = new int[size];
+                closedStamp = new int[size];
+                epoch = 1;
+                openList = new IndexedMinHeap(size);
+            }
+            Arrays.fill(free, 0, size, false);
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    free[(y - y0 + 1) * paddedWidth + x - x0 + 1] = !graph.obstacles.get(y * width + x);
+                }
+            }
+            //前4个是直走，后4个是斜走，斜走时k为偶数向左、为奇数向右
+            offsets[0] = -1;
+            offsets[1] = 1;
+            offsets[2] = -paddedWidth;
+            offsets[3] = paddedWidth;
+            offsets[4] = -paddedWidth - 1;
+            offsets[5] = -paddedWidth + 1;
+            offsets[6] = paddedWidth - 1;
+            offsets[7] = paddedWidth + 1;
+            //切换后之前的距离都不再有效
+            nextEpoch();
+        }
+
+        private void nextEpoch() {
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                Arrays.fill(closedStamp, 0);
+                epoch = 1;
+            }
+        }
+
+        private double distance(int local) {
+            return stamp[local] == epoch ? distances[local] : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * 从 source 出发搜索，找到 target 后停止，target 为负数时用Dijkstra搜索整个簇，否则用对角距离作启发的A*
+         */
+        public void run(int source, int target) {
+            nextEpoch();
+            openList.clear();
+            int sourceLocal = toLocal(source);
+            int targetLocal = target < 0 ? -1 : toLocal(target);
+            distances[sourceLocal] = 0;
+            stamp[sourceLocal] = epoch;
+            parents[sourceLocal] = -1;
+            double sourceH = heuristic(sourceLocal, targetLocal);
+            openList.push(sourceLocal, sourceH, sourceH);
+            while (!openList.isEmpty()) {
+                int current = openList.poll();
+                if (current == targetLocal) return;
+                closedStamp[current] = epoch;
+                double g = distances[current];
+                for (int k = 0; k < 8; k++) {
+                    int next = current + offsets[k];
+                    if (!free[next] || closedStamp[next] == epoch) continue;
+                    double tentative;
+                    if (k < 4) {
+                        tentative = g + 1;
+                    } else {
+                        int dx = (k & 1) == 0 ? -1 : 1;
+                        if (!free[current + dx] || !free[next - dx]) continue;
+                        tentative = g + SQRT2;
+                    }
+                    if (tentative < distance(next)) {
+                        distances[next] = tentative;
+                        stamp[next] = epoch;
+                        parents[next] = current;
+                        double h = heuristic(next, targetLocal);
+                        openList.push(next, tentative + h, h);
+                    }
+                }
+            }
+        }
+
+        private double heuristic(int local, int targetLocal) {
+            if (targetLocal < 0) return 0;
+            int dx = Math.abs(local % paddedWidth - targetLocal % paddedWidth);
+            int dy = Math.abs(local / paddedWidth - targetLocal / paddedWidth);
+            return Math.max(dx, dy) + (SQRT2 - 1) * Math.min(dx, dy);
+        }
+
+        /**
+         * @return 到簇内格子的距离，不可达或不在本簇内时为 {@link Double#POSITIVE_INFINITY}
+         */
+        public double distanceTo(int cell) {
+            int x = cell % width;
+            int y = cell / width;
+            if (x < x0 || x >= x1 || y < y0 || y >= y1) return Double.POSITIVE_INFINITY;
+            return distance(toLocal(cell));
+        }
+
+        /**
+         * 搜索完成后，按从 source 到 target 的顺序写出路径上的格子（不含 source）
+         *
+         * @return 路径上的格子数量，不可达时返回-1
+         */
+        public int pathTo(int target, @NotNull int[] buffer) {
+            if (Double.isInfinite(distanceTo(target))) return -1;
+            int count = 0;
+            for (int local = toLocal(target); parents[local] != -1; local = parents[local]) {
+                buffer[count++] = (y0 + local / paddedWidth - 1) * width + x0 + local % paddedWidth - 1;
+            }
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                int tmp = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = tmp;
+            }
+            return count;
+        }
+
+        /**
+         * @return 路径缓冲区需要的长度
+         */
+        public int capacity() {
+            return (x1 - x0) * (y1 - y0);
+        }
+
+        private int toLocal(int cell) {
+            return (cell / width - y0 + 1) * paddedWidth + (cell % width - x0 + 1);
+        }
+    }
+}
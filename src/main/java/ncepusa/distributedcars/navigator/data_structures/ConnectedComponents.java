@@ -0,0 +1,87 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * <p>障碍物地图的连通分量索引</p>
+ * <p>用并查集对所有非障碍格子做一次4连通标记，之后判断两个格子是否连通只需比较标签，是O(1)的。
+ * 地图的斜向移动要求两个相邻的正方向格子都不是障碍物，所以8连通（禁止切角）和4连通的分量是相同的</p>
+ * <p>每个地图快照只标记一次，所有小车共享，不可修改</p>
+ *
+ * @author 0109
+ * @since 2025-06-04
+ */
+public final class ConnectedComponents {
+    /**
+     * 障碍物格子的标签
+     */
+    public static final int NO_COMPONENT = -1;
+
+    private final int[] labels;
+    private final int count;
+
+    private ConnectedComponents(int[] labels, int count) {
+        this.labels = labels;
+        this.count = count;
+    }
+
+    /**
+     * 对障碍物地图做连通分量标记
+     *
+     * @param obstacleMap Redis中的障碍物位图
+     * @param width 地图宽度
+     * @param height 地图高度
+     * @return 连通分量索引
+     */
+    public static @NotNull ConnectedComponents label(@NotNull byte[] obstacleMap, int width, int height) {
+        PackedBitmap obstacles = new PackedBitmap(obstacleMap);
+        UnionFind unionFind = new UnionFind(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int index = y * width + x;
+                if (obstacles.get(index)) continue;
+                if (x + 1 < width && !obstacles.get(index + 1)) unionFind.union(index, index + 1);
+                if (y + 1 < height && !obstacles.get(index + width)) unionFind.union(index, index + width);
+            }
+        }
+
+        //把并查集的根压缩成从0开始的连续标签
+        int[] labels = new int[width * height];
+        Arrays.fill(labels, NO_COMPONENT);
+        int[] rootLabels = new int[width * height];
+        Arrays.fill(rootLabels, NO_COMPONENT);
+        int count = 0;
+        for (int index = 0; index < labels.length; index++) {
+            if (obstacles.get(index)) continue;
+            int root = unionFind.find(index);
+            if (rootLabels[root] == NO_COMPONENT) rootLabels[root] = count++;
+            labels[index] = rootLabels[root];
+        }
+        return new ConnectedComponents(labels, count);
+    }
+
+    /**
+     * @param index 格子下标
+     * @return 格子所在连通分量的标签，障碍物返回 {@link #NO_COMPONENT}
+     */
+    public int getLabel(int index) {
+        return labels[index];
+    }
+
+    /**
+     * 判断两个格子是否连通，障碍物和任何格子都不连通
+     */
+    public boolean isConnected(int a, int b) {
+        return labels[a] != NO_COMPONENT && labels[a] == labels[b];
+    }
+
+    /**
+     * @return 连通分量的数量
+     */
+    public int getCount() {
+        return count;
+    }
+
+}
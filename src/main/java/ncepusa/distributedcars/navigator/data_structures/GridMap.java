@@ -1,70 +1,75 @@
 package ncepusa.distributedcars.navigator.data_structures;
 
 import ncepusa.distributedcars.navigator.algorithm.PrimesUtil;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.data.geo.Point;
 import org.springframework.data.util.Pair;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Objects;
-import java.util.Random;
 
 
 /**
  * <p>表示用于路径规划和导航的基于网格的地图结构。</p>
  * <p>获取邻居等任务应该由地图本身完成，而不是由路径规划算法完成，要考虑 更换数据结构时算法代码不用更改</p>
+ * <p>所有格子的数据都以 {@code y * width + x} 为下标保存，不再为每个格子创建 {@link GridNode} 和 {@link Point} 对象。
+ * {@link GridNode} 只是某个下标的视图，只在对外接口处按需创建</p>
+ * <p>障碍物和已探索信息来自所有小车共享的只读快照 {@link MapSnapshot}，直接从Redis读到的位图中按位读取，构造地图是O(1)的；
+ * g值、父节点和关闭列表保存在线程私有的 {@link SearchState} 中，每次搜索开始时O(1)失效</p>
+ * <p>网格地图本身属于某辆车的某次请求，只保存起点、终点和不可达标记，不在线程之间共享</p>
  *
  * @author 0109
  * @since 2025-05-21
  */
 public class GridMap {
-    private List<List<GridNode>> grid;
-    private int width;
-    private int height;
+    /**
+     * 未被搜索到的格子的g值
+     */
+    public static final double INFINITE_G = 2147000000;
+    /**
+     * 没有父节点时的父节点下标
+     */
+    public static final int NO_PARENT = -1;
+    /**
+     * 不属于任何小车时的小车编号
+     */
+    public static final int NO_CAR = -1;
+
+    private final int width;
+    private final int height;
+    private final MapSnapshot snapshot;
+    private final PackedBitmap obstacles;
+    private final PackedBitmap visited;
+    /**
+     * 被标记为不可到达的格子，未标记的格子均可到达
+     */
+    private final BitSet unreachable;
+    /**
+     * 当前搜索使用的搜索状态，每次搜索开始时从当前线程获取
+     */
+    private SearchState searchState;
     private Point start;
     private Point end;
+    /**
+     * 这张地图属于哪辆车，需要按车保存搜索树的算法（D*Lite）用它区分小车
+     */
+    private int carId = NO_CAR;
     /**
      * 簇的长宽
      */
     private int clusterWidth,clusterHeight;
 
 
-    @Contract(pure = true)
-    public GridMap(@NotNull List<List<GridNode>> grid) {
-        this.grid = grid;
-        this.width = grid.get(0).size();
-        this.height = grid.size();
-        this.clusterWidth = 1;
-        this.clusterHeight = 1;
-    }
-
-    public GridMap(byte[] visitedMap, byte[] obstaclesMap, @NotNull Point mapSize, @NotNull Point start) {
-        this.width = (int) mapSize.getX();
-        this.height = (int) mapSize.getY();
+    public GridMap(@NotNull MapSnapshot snapshot, @NotNull Point start) {
+        this.snapshot = snapshot;
+        this.width = snapshot.getWidth();
+        this.height = snapshot.getHeight();
         this.start = start;
-        this.grid = new ArrayList<>();
-        for (int j = 0; j < height; j++) {
-            ArrayList<GridNode> arrayList = new ArrayList<>();
-            for (int i = 0; i < width; i++) {
-                GridNode gridNode = new GridNode(i, j);
-                int index = j * width + i;
-                gridNode.setG(2147000000);
-                gridNode.setParent(null);
-                if (index / 8 < visitedMap.length && ((visitedMap[index / 8] >> (7 - index % 8)) & 1) != 0) {
-                    gridNode.setVisited(true);
-                }
-                if (index / 8 < obstaclesMap.length && ((obstaclesMap[index / 8] >> (7 - index % 8)) & 1) != 0) {
-                    gridNode.setObstacle(true);
-                }
-                gridNode.setArrived(true);
-                
-                arrayList.add(gridNode);
-            }
-            grid.add(arrayList);
-        }
+        this.visited = snapshot.getVisited();
+        this.obstacles = snapshot.getObstacles();
+        this.unreachable = new BitSet();
         /*
           cluster的长宽影响了A*的效率，如果是普通的A*,不分层的情况下，cluster的长宽均为1
           在HPA*中，需要设置cluster的长宽为合适的值
@@ -73,6 +78,10 @@ public class GridMap {
         this.clusterHeight = 1;
     }
 
+    public GridMap(byte[] visitedMap, byte[] obstaclesMap, @NotNull Point mapSize, @NotNull Point start) {
+        this(new MapSnapshot(0, (int) mapSize.getX(), (int) mapSize.getY(), visitedMap, obstaclesMap), start);
+    }
+
     /**
      * 计算两个节点之间的曼哈顿距离
      *
@@ -82,11 +91,14 @@ public class GridMap {
      * @since 2025-05-21
      */
     public double ManhattanDistance(@NotNull GridNode a, @NotNull GridNode b) {
-        return Math.abs(a.getX() - b.getX()) + Math.abs(a.getY() - b.getY());
+        return ManhattanDistance(a.getIndex(), b.getIndex());
     }
     public double ManhattanDistance(@NotNull Point a, @NotNull Point b) {
         return Math.abs(a.getX() - b.getX()) + Math.abs(a.getY() - b.getY());
     }
+    public double ManhattanDistance(int a, int b) {
+        return Math.abs(getX(a) - getX(b)) + Math.abs(getY(a) - getY(b));
+    }
 
     /**
      * 计算两个节点之间的欧几里得距离
@@ -95,16 +107,19 @@ public class GridMap {
      * @param b 目标节点
      * @return 欧几里得距离
      */
-    public double diagonalDistance(GridNode a, GridNode b) {
-        double dx = Math.abs(a.getX() - b.getX());
-        double dy = Math.abs(a.getY() - b.getY());
-        return dx + dy + (Math.sqrt(2) - 2) * Math.min(dx, dy);
+    public double diagonalDistance(@NotNull GridNode a, @NotNull GridNode b) {
+        return diagonalDistance(a.getIndex(), b.getIndex());
     }
     public double diagonalDistance(Point a, Point b) {
         int dx = Math.abs((int) a.getX() - (int) b.getX());
         int dy = Math.abs((int) a.getY() - (int) b.getY());
         return dx + dy + (Math.sqrt(2) - 2) * Math.min(dx, dy);
     }
+    public double diagonalDistance(int a, int b) {
+        int dx = Math.abs(getX(a) - getX(b));
+        int dy = Math.abs(getY(a) - getY(b));
+        return dx + dy + (Math.sqrt(2) - 2) * Math.min(dx, dy);
+    }
 
 
     /**
@@ -113,24 +128,23 @@ public class GridMap {
      * <p>尽量保证所有簇的容量相同，如果不能保证，尽量保证容量差值不大</p>
      */
     public void setClusterSize() {
-        int tmpWidth = width;
-        while(PrimesUtil.isPrime(tmpWidth)) tmpWidth++; //最多循环2次，99.99999%情况下只循环1次
-        int st = (int) Math.sqrt(tmpWidth);
-        for(int i = st; i > 0; i--) {
-            if(tmpWidth % i == 0) {
-                clusterWidth = i;
-                break;
-            }
-        }
-        int tmphHeight = height;
-        while(PrimesUtil.isPrime(tmphHeight)) tmphHeight++;
-        st = (int) Math.sqrt(tmphHeight);
+        clusterWidth = clusterSideFor(width);
+        clusterHeight = clusterSideFor(height);
+    }
+
+    /**
+     * <p>按地图边长计算簇的边长：不超过边长平方根的最大因数，边长为质数时改用边长+1的因数</p>
+     * @param side 地图宽度或高度
+     * @return 簇的宽度或高度
+     */
+    public static int clusterSideFor(int side) {
+        int tmpSide = side;
+        while(PrimesUtil.isPrime(tmpSide)) tmpSide++; //最多循环2次，99.99999%情况下只循环1次
+        int st = (int) Math.sqrt(tmpSide);
         for(int i = st; i > 0; i--) {
-            if(tmphHeight % i == 0) {
-                clusterHeight = i;
-                break;
-            }
+            if(tmpSide % i == 0) return i;
         }
+        return 1;
     }
 
     /**
@@ -139,11 +153,20 @@ public class GridMap {
      * @return 入口和出口点对。
      */
     public @NotNull List<Pair<Point,Point>> getClusterNeighbors(@NotNull GridNode nodeInCluster) {
+        return getClusterNeighbors(nodeInCluster.getIndex());
+    }
+
+    /**
+     * <p>获取给定下标所在簇与其所有邻居簇的 入口和出口<b>点对</b></p>
+     * @param indexInCluster 指定的簇中的任意一个格子的下标
+     * @return 入口和出口点对。
+     */
+    public @NotNull List<Pair<Point,Point>> getClusterNeighbors(int indexInCluster) {
         List<Pair<Point,Point>> neighborPointsPairs = new ArrayList<>();
         //簇的长宽均为1时，直接返回该节点的所有邻居
-        if(clusterWidth == 1 && clusterHeight == 1) return getNodeNeighbors(nodeInCluster);
-        int clusterX = nodeInCluster.getX() / clusterWidth;
-        int clusterY = nodeInCluster.getY() / clusterHeight;
+        if(clusterWidth == 1 && clusterHeight == 1) return getNodeNeighbors(indexInCluster);
+        int clusterX = getX(indexInCluster) / clusterWidth;
+        int clusterY = getY(indexInCluster) / clusterHeight;
 
         int startX = clusterX * clusterWidth;
         int startY = clusterY * clusterHeight;
@@ -157,22 +180,18 @@ public class GridMap {
         int dx = 1;
         int dy = 0;
         for(int k = 0; k < count; k++){
-            GridNode currentNode = getGridNode(sti, stj);
-            if(null != currentNode && !currentNode.isObstacle()) {
+            if(!isObstacleAt(sti, stj)) {
                 //当前节点为东/西/南/北边界上的点时，
                 //判断其东/西/南/北方向的邻居节点
-                GridNode neighborNode = getGridNode(sti + (dx == 0 ? dy : 0), stj + (dy == 0 ? -dx : 0));
-                if(null != neighborNode && !neighborNode.isObstacle()) {
+                if(!isObstacleAt(sti + (dx == 0 ? dy : 0), stj + (dy == 0 ? -dx : 0))) {
                     neighborPointsPairs.add(Pair.of(new Point(sti, stj), new Point(sti, stj + (dy == 0 ? -dx : 0))));
                 }
                 //判断其东北/西北/西南/西北方向的邻居节点
-                neighborNode = getGridNode(sti + (dx == 0 ? dy : -1), stj + (dy == 0 ? -dx : -1));
-                if(null != neighborNode && !neighborNode.isObstacle()) {
+                if(!isObstacleAt(sti + (dx == 0 ? dy : -1), stj + (dy == 0 ? -dx : -1))) {
                     neighborPointsPairs.add(Pair.of(new Point(sti, stj), new Point(sti + (dx == 0 ? dy : -1), stj + (dy == 0 ? -dx : -1))));
                 }
                 //判断其东南/西南/东南/东北方向的邻居节点
-                neighborNode = getGridNode(sti + (dx == 0 ? dy : 1), stj + (dy == 0 ? -dx : 1));
-                if(null != neighborNode && !neighborNode.isObstacle()) {
+                if(!isObstacleAt(sti + (dx == 0 ? dy : 1), stj + (dy == 0 ? -dx : 1))) {
                     neighborPointsPairs.add(Pair.of(new Point(sti, stj), new Point(sti + (dx == 0 ? dy : 1), stj + (dy == 0 ? -dx : 1))));
                 }
             }
@@ -204,7 +223,7 @@ public class GridMap {
         List<List<Pair<Point, Point>>> clustersPointsPairs = new ArrayList<>();
         for(int i = 0; i < width; i += clusterWidth) {
             for(int j = 0; j < height; j += clusterHeight) {
-                clustersPointsPairs.add(getClusterNeighbors(Objects.requireNonNull(getGridNode(i, j))));
+                clustersPointsPairs.add(getClusterNeighbors(toIndex(i, j)));
             }
         }
         return clustersPointsPairs;
@@ -217,9 +236,20 @@ public class GridMap {
      * @return 邻居节点列表：.first:入口；.second:出口
      */
     public List<Pair<Point,Point>> getNodeNeighbors(@NotNull GridNode gridNode) {
+        return getNodeNeighbors(gridNode.getIndex());
+    }
+
+    /**
+     * <p>获取给定下标的可通行邻居节点</p>
+     * <p>障碍物格子不会作为邻居返回；斜向邻居还要求两个相邻的正向格子都不是障碍物</p>
+     *
+     * @param index 目标格子的下标
+     * @return 邻居节点列表：.first:入口；.second:出口
+     */
+    public List<Pair<Point,Point>> getNodeNeighbors(int index) {
         List<Pair<Point,Point>> neighbors = new ArrayList<>();
-        int x = gridNode.getX();
-        int y = gridNode.getY();
+        int x = getX(index);
+        int y = getY(index);
 
         for (int dx = -1; dx <= 1; dx++) {
             for (int dy = -1; dy <= 1; dy++) {
@@ -227,52 +257,83 @@ public class GridMap {
                 int nx = x + dx;
                 int ny = y + dy;
                 if (dx != 0 && dy != 0) {
-                    GridNode horizontalNeighbor = getGridNode(nx, y);
-                    GridNode verticalNeighbor = getGridNode(x, ny);
-                    if (null != horizontalNeighbor && !horizontalNeighbor.isObstacle() &&
-                            null != verticalNeighbor && !verticalNeighbor.isObstacle()) {
-                        neighbors.add(Pair.of(new Point(x, y), new Point(nx, ny)));
-                    }
-                } else if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
-                    GridNode neighbor = getGridNode(nx, ny);
-                    if (null!= neighbor &&!neighbor.isObstacle()) {
+                    if (!isObstacleAt(nx, ny) && !isObstacleAt(nx, y) && !isObstacleAt(x, ny)) {
                         neighbors.add(Pair.of(new Point(x, y), new Point(nx, ny)));
                     }
+                } else if (!isObstacleAt(nx, ny)) {
+                    neighbors.add(Pair.of(new Point(x, y), new Point(nx, ny)));
                 }
             }
         }
         return neighbors;
     }
 
-    public void setG(){
-        for(int j = 0; j < height; j++) {
-            for(int i = 0; i < width; i++) {
-                grid.get(j).get(i).setG(2147000000);
+    /**
+     * <p>把给定下标的可通行邻居写入调用方提供的缓冲区，不创建任何对象</p>
+     * <p>与 {@link #getNodeNeighbors(int)} 的顺序和规则相同：障碍物格子不会被写入，
+     * 斜向邻居只有在两个相邻的正向格子都不是障碍物时才可达</p>
+     *
+     * @param index 目标格子的下标
+     * @param buffer 长度至少为8的缓冲区
+     * @return 邻居的数量
+     */
+    public int getNeighborIndices(int index, @NotNull int[] buffer) {
+        int x = getX(index);
+        int y = getY(index);
+        int count = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            int nx = x + dx;
+            for (int dy = -1; dy <= 1; dy++) {
+                if (dx == 0 && dy == 0) continue;
+                int ny = y + dy;
+                if (isObstacleAt(nx, ny)) continue;
+                if (dx != 0 && dy != 0 && (isObstacleAt(nx, y) || isObstacleAt(x, ny))) continue;
+                buffer[count++] = index + dy * width + dx;
             }
         }
+        return count;
     }
+
     /**
-     * <p>根据小车数量划分区域：</p>
-     * <ul>
-     *   <li>奇数小车数量时，最后一个区域覆盖剩余空间，<b>尽量</b>保证所有小车探索区域的大小是一致的</li>
-     *   <li>偶数小车数量时，均匀分配区域</li>
-     * </ul>
-     * <p>根据当前的carid分配探索区域：</p>
-     * <ul>
-     *   <li>ID为奇数的小车负责左侧区域</li>
-     * <p>分配区域后，每个小车在自己的区域内选择具有较多未探索点的点作为终点。</p>
-     * <p>终点的选择基于每个节点自身及其周围未探索邻居的数量。</p>
-     * <p>小车探索完自己的区域后，会协助其他小车探索区域</p>
+     * <p>把给定下标所在簇的邻居（入口和出口点对的出口）写入调用方提供的缓冲区</p>
+     * <p>簇的长宽均为1时等价于 {@link #getNeighborIndices(int, int[])}，不创建任何对象</p>
+     *
+     * @param indexInCluster 指定的簇中的任意一个格子的下标
+     * @param buffer 长度至少为 {@link #getNeighborBufferSize()} 的缓冲区
+     * @return 邻居的数量
+     */
+    public int getClusterNeighborIndices(int indexInCluster, @NotNull int[] buffer) {
+        if (clusterWidth == 1 && clusterHeight == 1) return getNeighborIndices(indexInCluster, buffer);
+        List<Pair<Point, Point>> neighbors = getClusterNeighbors(indexInCluster);
+        for (int i = 0; i < neighbors.size(); i++) {
+            buffer[i] = toIndex(neighbors.get(i).getSecond());
+        }
+        return neighbors.size();
+    }
+
+    /**
+     * @return 按当前簇大小，一个格子最多有多少个邻居
+     */
+    public int getNeighborBufferSize() {
+        return Math.max(8, 3 * (clusterWidth * 2 + clusterHeight * 2 - 4));
+    }
+
+    /**
+     * <p>开始一次新的搜索，之前搜索写入的g值和父节点全部失效</p>
+     * <p>只是把代数加一，与地图大小无关</p>
+     */
+    public void resetSearchState() {
+        searchState = SearchState.forCurrentThread(width * height);
+        searchState.reset();
+    }
+    /**
+     * <p>计算小车负责探索的区域，划分规则见 {@link #electEndpoint(int, int)}</p>
      *
      * @param carNumbers 小车数量
      * @param carid 当前小车的id
+     * @return 区域的边界 {startx, endx, starty, endy}，左闭右开
      */
-    public void electEndpoint(int carNumbers, int carid) {
-        GridNode tmpNode;
-        Point tmpEnd = null;
-        int maxUnexploredCount = 0;
-        Random random = new Random();
-
+    public @NotNull int[] getExploreRegion(int carNumbers, int carid) {
         int heightCount = carNumbers / 2;
         int heightLength = 0;
         if ((carNumbers & 1) == 1) heightLength = (int) ((double) height / (0.5 + (double) heightCount));
@@ -294,74 +355,112 @@ public class GridMap {
             starty = heightLength * heightCount - 1;
             endy = height;
         }
+        return new int[]{startx, endx, starty, endy};
+    }
 
-        boolean isUp = PrimesUtil.isPrime(carid + random.nextInt(4));
-        st:
-        for (int j = isUp ? starty : (endy - 1);
-             j >= starty && j < endy;
-             j += isUp ? 1 : -1) {
-            for (int i = (start.getX() < (endx + startx) / 2 ? startx : (endx - 1));
-                 i < endx && i >= startx;
-                 i += (start.getX() < (endx + startx) / 2 ? 1 : -1)) {
-                if (i == start.getX() && j == start.getY()) continue;
-                tmpNode = grid.get(j).get(i);
-                if (!tmpNode.isObstacle() && tmpNode.isArrived()) {
-                    int exploredCount = countUnexploredNeighbors(tmpNode);
-                    if (exploredCount > maxUnexploredCount) {
-                        maxUnexploredCount = exploredCount;
-                        tmpEnd = new Point(i, j);
-                        if(maxUnexploredCount == 9 || random.nextDouble() <= 0.7) break st;
-                    }
-                }
-            }
+    /**
+     * <p>根据小车数量划分区域：</p>
+     * <ul>
+     *   <li>奇数小车数量时，最后一个区域覆盖剩余空间，<b>尽量</b>保证所有小车探索区域的大小是一致的</li>
+     *   <li>偶数小车数量时，均匀分配区域</li>
+     * </ul>
+     * <p>根据当前的carid分配探索区域：</p>
+     * <ul>
+     *   <li>ID为奇数的小车负责左侧区域</li>
+     * <p>分配区域后，每个小车在自己的区域内选择具有较多未探索点的点作为终点。</p>
+     * <p>终点的选择基于每个节点自身及其周围未探索邻居的数量，得分相同时选择离起点最近的格子。</p>
+     * <p>只考虑和起点连通的格子。</p>
+     * <p>每个格子的得分从快照的未探索格子前缀和中O(1)查表得到，整个区域线性扫描一遍即可排出最优终点。</p>
+     * <p>小车探索完自己的区域后，会协助其他小车探索区域</p>
+     *
+     * @param carNumbers 小车数量
+     * @param carid 当前小车的id
+     */
+    public void electEndpoint(int carNumbers, int carid) {
+        int[] region = getExploreRegion(carNumbers, carid);
+
+        //只在起点所在的连通分量中选举终点，不连通的终点一定搜索失败
+        int startIndex = toIndex(start);
+        ConnectedComponents components = snapshot.getComponents();
+        if (components.getLabel(startIndex) == ConnectedComponents.NO_COMPONENT) components = null;
+
+        int best = NO_PARENT;
+        //区域连同外面一圈都没有未探索的格子时，区域内所有格子的得分都是0，不用逐个检查
+        if (snapshot.getUnexplored().count(region[0] - 1, region[2] - 1, region[1] + 1, region[3] + 1) > 0) {
+            best = rankCandidates(region[0], region[1], region[2], region[3], null, startIndex, components);
         }
-        if (null != tmpEnd) {
-            this.end = tmpEnd;
-            return;
+        if (best == NO_PARENT) {
+            //当前小车已探索完自己的区域,开始协助其他小车探索其他区域
+            best = rankCandidates(0, width, 0, height, region, startIndex, components);
         }
+        if (best != NO_PARENT) this.end = new Point(getX(best), getY(best));
+    }
 
-        //当前小车已探索完自己的区域,开始协助其他小车探索其他区域
-        maxUnexploredCount = 0;
-        st:
-        for (int j = 0; j < height; j++) {
-            for (int i = 0; i < width; i++) {
-                if (i == start.getX() && j == start.getY()) continue;
-                if (i >= startx && i < endx && j >= starty && j < endy) continue;
-                tmpNode = grid.get(j).get(i);
-                if (!tmpNode.isObstacle() && tmpNode.isArrived()) {
-                    int exploredCount = countUnexploredNeighbors(tmpNode);
-                    if (exploredCount > maxUnexploredCount) {
-                        maxUnexploredCount = exploredCount;
-                        tmpEnd = new Point(i, j);
-                        if (maxUnexploredCount == 9 || random.nextDouble() <= 0.8) break st;
-                    }
+    /**
+     * <p>判断给定格子是否仍然可以作为终点：和 {@link #electEndpoint(int, int)} 的候选条件相同，
+     * 即不是起点、不是障碍物、没有被标记为不可达、和起点连通，且自身或周围还有未探索的格子</p>
+     * <p>用于沿用上一条消息选出的终点，不比较得分</p>
+     *
+     * @param index 格子的下标，可以越界
+     * @return 可以作为终点时返回 true
+     */
+    public boolean isEndpointCandidate(int index) {
+        if (index < 0 || index >= width * height) return false;
+        int startIndex = toIndex(start);
+        if (index == startIndex || obstacles.get(index) || unreachable.get(index)) return false;
+        ConnectedComponents components = snapshot.getComponents();
+        if (components.getLabel(startIndex) != ConnectedComponents.NO_COMPONENT
+                && !components.isConnected(startIndex, index)) return false;
+        return countUnexploredNeighbors(index) > 0;
+    }
+
+    /**
+     * <p>线性扫描一遍矩形范围，选出得分最高的候选终点</p>
+     * <p>得分相同时选离起点更近（曼哈顿距离）的格子，距离也相同时选扫描顺序靠前的格子，所以结果是确定的</p>
+     *
+     * @param startX 范围左边界（包含）
+     * @param endX 范围右边界（不包含）
+     * @param startY 范围上边界（包含）
+     * @param endY 范围下边界（不包含）
+     * @param excluded 需要跳过的区域 {startx, endx, starty, endy}，可以为 null
+     * @param startIndex 起点下标
+     * @param components 连通分量，不为 null 时只考虑和起点连通的格子
+     * @return 候选终点的下标，没有得分大于0的格子时返回 {@link #NO_PARENT}
+     */
+    private int rankCandidates(int startX, int endX, int startY, int endY, @Nullable int[] excluded,
+                               int startIndex, @Nullable ConnectedComponents components) {
+        int best = NO_PARENT;
+        int bestCount = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        int sx = getX(startIndex);
+        int sy = getY(startIndex);
+        for (int j = startY; j < endY; j++) {
+            for (int i = startX; i < endX; i++) {
+                if (null != excluded && i >= excluded[0] && i < excluded[1] && j >= excluded[2] && j < excluded[3]) continue;
+                int index = toIndex(i, j);
+                if (index == startIndex || obstacles.get(index) || unreachable.get(index)) continue;
+                if (null != components && !components.isConnected(startIndex, index)) continue;
+                int unexploredCount = countUnexploredNeighbors(index);
+                if (unexploredCount == 0 || unexploredCount < bestCount) continue;
+                int distance = Math.abs(i - sx) + Math.abs(j - sy);
+                if (unexploredCount > bestCount || distance < bestDistance) {
+                    best = index;
+                    bestCount = unexploredCount;
+                    bestDistance = distance;
                 }
             }
         }
-        if (null != tmpEnd) this.end = tmpEnd;
+        return best;
     }
 
     /**
-     * 计算给定节点的未探索邻居数量。
+     * 计算给定格子的未探索邻居数量（包括格子自身）。
      *
-     * @param node 要评估的节点
+     * @param index 要评估的格子的下标
      * @return 未探索邻居的数量
      */
-    private int countUnexploredNeighbors(@NotNull GridNode node) {
-        int count = node.isVisited() ? 0 : 1;
-        for(int dx = -1; dx <= 1; dx++) {
-            for(int dy = -1; dy <= 1; dy++) {
-                if(dx == 0 && dy == 0) continue;
-                int nx = node.getX() + dx;
-                int ny = node.getY() + dy;
-                if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
-                GridNode neighbor = getGridNode(nx, ny);
-                if (neighbor != null && !neighbor.isVisited()) {
-                    count++;
-                }
-            }
-        }
-        return count;
+    public int countUnexploredNeighbors(int index) {
+        return snapshot.getUnexplored().countUnexploredNeighbors(getX(index), getY(index));
     }
 
     /**
@@ -373,24 +472,26 @@ public class GridMap {
      * @return 如果存在强制邻居则返回 true，否则返回 false
      */
     public boolean hasForcedNeighbor(@NotNull GridNode node, @NotNull Point direction) {
-        int dx = (int) direction.getX();
-        int dy = (int) direction.getY();
+        return hasForcedNeighbor(node.getIndex(), (int) direction.getX(), (int) direction.getY());
+    }
 
+    /**
+     * <p>检查在给定方向上是否存在“强制邻居”，越界的格子不算作障碍物。</p>
+     *
+     * @param index 当前格子的下标
+     * @param dx 方向的x分量
+     * @param dy 方向的y分量
+     * @return 如果存在强制邻居则返回 true，否则返回 false
+     */
+    public boolean hasForcedNeighbor(int index, int dx, int dy) {
+        int x = getX(index);
+        int y = getY(index);
         if (dx != 0 && dy != 0) { // 斜向移动
-            GridNode horizontal = getGridNode(node.getX() + dx, node.getY());
-            GridNode vertical = getGridNode(node.getX(), node.getY() + dy);
-            return (horizontal != null && horizontal.isObstacle()) ||
-                    (vertical != null && vertical.isObstacle());
+            return isObstacleInBounds(x + dx, y) || isObstacleInBounds(x, y + dy);
         } else if (dx != 0) { // 水平移动
-            GridNode upper = getGridNode(node.getX() + dx, node.getY() + 1);
-            GridNode lower = getGridNode(node.getX() + dx, node.getY() - 1);
-            return (upper != null && upper.isObstacle()) ||
-                    (lower != null && lower.isObstacle());
+            return isObstacleInBounds(x + dx, y + 1) || isObstacleInBounds(x + dx, y - 1);
         } else if (dy != 0) { // 垂直移动
-            GridNode left = getGridNode(node.getX() - 1, node.getY() + dy);
-            GridNode right = getGridNode(node.getX() + 1, node.getY() + dy);
-            return (left != null && left.isObstacle()) ||
-                    (right != null && right.isObstacle());
+            return isObstacleInBounds(x - 1, y + dy) || isObstacleInBounds(x + 1, y + dy);
         }
         return false;
     }
@@ -434,11 +535,21 @@ public class GridMap {
         return forcedDirs;
     }
 
+    /**
+     * 判断指定坐标是否为障碍物，越界视为障碍物
+     */
     public boolean isObstacleAt(int x, int y) {
         if (x < 0 || x >= width || y < 0 || y >= height) {
             return true;
         }
-        return grid.get(y).get(x).isObstacle();
+        return obstacles.get(toIndex(x, y));
+    }
+
+    /**
+     * 判断指定坐标是否为障碍物，越界不视为障碍物
+     */
+    private boolean isObstacleInBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height && obstacles.get(toIndex(x, y));
     }
     /**
      * 获取当前节点在指定方向上的下一个节点。
@@ -465,11 +576,14 @@ public class GridMap {
         if (x < 0 || x >= width || y < 0 || y >= height) {
             return null;
         }
-        return grid.get(y).get(x);
+        return new GridNode(this, toIndex(x, y));
     }
     public GridNode getGridNode(@NotNull Point point) {
         return getGridNode((int) point.getX(), (int) point.getY());
     }
+    public @NotNull GridNode getGridNode(int index) {
+        return new GridNode(this, index);
+    }
 
     /**
      * 判断两个节点是否为邻居,同时考虑空间和可达性
@@ -511,53 +625,169 @@ public class GridMap {
      * @return 所有节点的一维列表
      */
     public List<GridNode> getAllNodes() {
-        List<GridNode> allNodes = new ArrayList<>();
-        for (List<GridNode> row : grid) {
-            allNodes.addAll(row);
+        List<GridNode> allNodes = new ArrayList<>(width * height);
+        for (int index = 0; index < width * height; index++) {
+            allNodes.add(new GridNode(this, index));
         }
         return allNodes;
     }
 
-    public List<List<GridNode>> getGrid() {
-        return grid;
+    /**
+     * 坐标转下标
+     */
+    public int toIndex(int x, int y) {
+        return y * width + x;
+    }
+    public int toIndex(@NotNull Point point) {
+        return toIndex((int) point.getX(), (int) point.getY());
     }
 
-    public void setGrid(List<List<GridNode>> grid) {
-        this.grid = grid;
+    /**
+     * 下标转x坐标
+     */
+    public int getX(int index) {
+        return index % width;
     }
 
-    public int getWidth() {
-        return width;
+    /**
+     * 下标转y坐标
+     */
+    public int getY(int index) {
+        return index / width;
     }
 
-    public void setWidth(int width) {
-        this.width = width;
+    public boolean isObstacle(int index) {
+        return obstacles.get(index);
     }
 
-    public int getHeight() {
-        return height;
+    public boolean isVisited(int index) {
+        return visited.get(index);
+    }
+
+    public boolean isArrived(int index) {
+        return !unreachable.get(index);
+    }
+
+    public void setArrived(int index, boolean isArrived) {
+        unreachable.set(index, !isArrived);
+    }
+
+    public double getG(int index) {
+        return null == searchState ? INFINITE_G : searchState.getG(index);
+    }
+
+    public void setG(int index, double gCost) {
+        ensureSearchState().setG(index, gCost);
     }
 
-    public void setHeight(int height) {
-        this.height = height;
+    public int getParent(int index) {
+        return null == searchState ? NO_PARENT : searchState.getParent(index);
+    }
+
+    public void setParent(int index, int parentIndex) {
+        ensureSearchState().setParent(index, parentIndex);
+    }
+
+    public boolean isClosed(int index) {
+        return null != searchState && searchState.isClosed(index);
+    }
+
+    /**
+     * 把格子加入关闭列表
+     *
+     * @param index 格子下标
+     * @return 格子之前不在关闭列表中时返回 true
+     */
+    public boolean close(int index) {
+        return ensureSearchState().close(index);
+    }
+
+    /**
+     * @return 本线程复用的队列缓冲区，容量不小于格子数量
+     */
+    public int[] getSearchQueue() {
+        return ensureSearchState().getQueue();
+    }
+
+    /**
+     * 没有调用过 {@link #resetSearchState()} 就写入时，开始一次新的搜索
+     */
+    private SearchState ensureSearchState() {
+        if (null == searchState) resetSearchState();
+        return searchState;
+    }
+
+    /**
+     * @return 当前障碍物地图按行和按列打包的位板
+     */
+    public @NotNull ObstacleBitboard getObstacleBitboard() {
+        return snapshot.getObstacleBitboard();
+    }
+
+    /**
+     * @return 当前障碍物地图的JPS+跳跃距离表
+     */
+    public @NotNull JumpDistanceTable getJumpDistances() {
+        return snapshot.getJumpDistances();
+    }
+
+    /**
+     * @return 当前障碍物地图的ALT地标距离表，还在后台构建时返回 null，见 {@link MapSnapshot#getLandmarksIfReady()}
+     */
+    public @Nullable LandmarkTable getLandmarksIfReady() {
+        return snapshot.getLandmarksIfReady();
+    }
+
+    /**
+     * @return 当前障碍物地图的全源最短路径表
+     */
+    public @NotNull AllPairsTable getAllPairs() {
+        return snapshot.getAllPairs();
+    }
+
+    /**
+     * @return 当前障碍物地图的HPA*簇图
+     */
+    public @NotNull ClusterGraph getClusterGraph() {
+        return snapshot.getClusterGraph();
+    }
+
+    public @NotNull MapSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
     }
 
     public GridNode getStart() {
-        return grid.get((int) start.getY()).get((int) start.getX());
+        return getGridNode(start);
     }
 
     public void setStart(Point start) {
         this.start = start;
     }
 
-    public GridNode getEnd() {
-        return grid.get((int) end.getY()).get((int) end.getX());
+    public @Nullable GridNode getEnd() {
+        return null == end ? null : getGridNode(end);
     }
 
     public void setEnd(Point end) {
         this.end = end;
     }
 
+    public int getCarId() {
+        return carId;
+    }
+
+    public void setCarId(int carId) {
+        this.carId = carId;
+    }
+
     public int getClusterWidth() {
         return clusterWidth;
     }
@@ -573,4 +803,4 @@ public class GridMap {
     public void setClusterHeight(int clusterHeight) {
         this.clusterHeight = clusterHeight;
     }
-}
\ No newline at end of file
+}
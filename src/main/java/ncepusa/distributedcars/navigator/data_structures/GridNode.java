@@ -2,96 +2,71 @@ package ncepusa.distributedcars.navigator.data_structures;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.data.geo.Point;
 
-import java.util.Objects;
-
 /**
  * <p>网格地图节点类</p>
+ * <p>节点本身不保存数据，只是 {@link GridMap} 中某个下标的视图，所有读写都直接作用在地图的一维数组上。
+ * 只在对外接口处按需创建，路径规划算法内部直接使用下标</p>
  *
  * @author 0109
  * @since 2025-05-21
  */
-public class GridNode implements Comparable<GridNode> {
-    private Point position;
-    private double g,h;
-    private boolean isObstacle = false;
-    private boolean isVisited = false;
-    private GridNode parent;
-    private boolean isArrived = true;
-    public GridNode(int x, int y){
-        this.position = new Point(x, y);
+public class GridNode {
+    private final GridMap map;
+    private final int index;
+
+    GridNode(@NotNull GridMap map, int index) {
+        this.map = map;
+        this.index = index;
     }
-    public GridNode(Point xy){
-        this.position = xy;
+
+    public int getIndex() {
+        return index;
     }
 
     public Point getXY() {
-        return position;
+        return new Point(getX(), getY());
     }
 
-    public void setXY(Point xy) {
-        this.position = xy;
-    }
     public int getX(){
-        return (int) position.getX();
+        return map.getX(index);
     }
     public int getY(){
-        return (int) position.getY();
+        return map.getY(index);
     }
     public double getG() {
-        return g;
+        return map.getG(index);
     }
 
     public void setG(double g) {
-        this.g = g;
-    }
-
-    public double getH() {
-        return h;
-    }
-
-    public void setH(double h) {
-        this.h = h;
+        map.setG(index, g);
     }
 
     public boolean isObstacle() {
-        return isObstacle;
-    }
-
-    public void setObstacle(boolean obstacle) {
-        isObstacle = obstacle;
+        return map.isObstacle(index);
     }
 
     public boolean isVisited() {
-        return isVisited;
-    }
-
-    public void setVisited(boolean visited) {
-        isVisited = visited;
+        return map.isVisited(index);
     }
 
-    public GridNode getParent() {
-        return parent;
+    public @Nullable GridNode getParent() {
+        int parentIndex = map.getParent(index);
+        return parentIndex == GridMap.NO_PARENT ? null : new GridNode(map, parentIndex);
     }
 
-    public void setParent(GridNode parent) {
-        this.parent = parent;
+    public void setParent(@Nullable GridNode parent) {
+        map.setParent(index, null == parent ? GridMap.NO_PARENT : parent.index);
     }
 
     public boolean isArrived() {
-        return isArrived;
+        return map.isArrived(index);
     }
 
     public void setArrived(boolean arrived) {
-        isArrived = arrived;
-    }
-
-    @Override
-    public int compareTo(@NotNull GridNode other) {
-        double thisCost = this.g + this.h;
-        double otherCost = other.g + other.h;
-        return Integer.compare((int)thisCost, (int)otherCost);
+        map.setArrived(index, arrived);
     }
 
     @Contract(value = "null -> false", pure = true)
@@ -99,11 +74,11 @@ public class GridNode implements Comparable<GridNode> {
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
         GridNode gridNode = (GridNode) o;
-        return (int)position.getX() == (int)gridNode.getXY().getX() && (int)position.getY() == (int)gridNode.getXY().getY();
+        return map == gridNode.map && index == gridNode.index;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash((int)position.getX(), (int)position.getY());
+        return Integer.hashCode(index);
     }
 }
@@ -0,0 +1,198 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+/**
+ * <p>以格子下标为键的二叉最小堆，用作A*和JPS的开放列表</p>
+ * <p>每个格子在堆中最多出现一次，代价变小时原地上浮（decrease-key），不再重复入队。
+ * 优先级按f值比较，f值相同时h值更小的格子优先，即更靠近终点的格子先扩展</p>
+ * <p>格子在堆中的位置用 {@code position} 数组记录，清空时只把大小置0，
+ * 旧的位置通过“该位置上的格子是否就是自己”来判断是否有效，不需要遍历数组</p>
+ * <p>开放列表是线程私有的，容量按该线程见过的最大地图分配，搜索过程中不分配内存</p>
+ *
+ * @author 0109
+ * @since 2025-05-21
+ */
+public class IndexedMinHeap {
+    private static final ThreadLocal<IndexedMinHeap> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<IndexedMinHeap> REVERSE = new ThreadLocal<>();
+
+    /**
+     * 堆中每个位置上的格子下标
+     */
+    private final int[] heap;
+    private final double[] keys;
+    private final double[] ties;
+    /**
+     * 每个格子在堆中的位置
+     */
+    private final int[] position;
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.keys = new double[capacity];
+        this.ties = new double[capacity];
+        this.position = new int[capacity];
+    }
+
+    /**
+     * 获取当前线程的开放列表，容量不足时重新分配，返回前已清空
+     *
+     * @param capacity 需要的格子数量
+     * @return 当前线程的开放列表
+     */
+    public static IndexedMinHeap forCurrentThread(int capacity) {
+        return forCurrentThread(CURRENT, capacity);
+    }
+
+    /**
+     * 获取当前线程给双向搜索反向一侧使用的开放列表，与 {@link #forCurrentThread(int)} 互不影响
+     *
+     * @param capacity 需要的格子数量
+     * @return 当前线程反向搜索的开放列表
+     */
+    public static IndexedMinHeap reverseForCurrentThread(int capacity) {
+        return forCurrentThread(REVERSE, capacity);
+    }
+
+    private static IndexedMinHeap forCurrentThread(ThreadLocal<IndexedMinHeap> holder, int capacity) {
+        IndexedMinHeap openList = holder.get();
+        if (null == openList || openList.capacity() < capacity) {
+            openList = new IndexedMinHeap(capacity);
+            holder.set(openList);
+        }
+        openList.clear();
+        return openList;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return position.length;
+    }
+
+    public boolean contains(int index) {
+        int slot = position[index];
+        return slot < size && heap[slot] == index;
+    }
+
+    /**
+     * 加入格子，格子已在堆中时更新它的优先级
+     *
+     * @param index 格子下标
+     * @param key 主键，一般是f值
+     * @param tie 主键相同时比较的次键，一般是h值
+     */
+    public void push(int index, double key, double tie) {
+        int slot;
+        if (contains(index)) {
+            slot = position[index];
+        } else {
+            slot = size++;
+            heap[slot] = index;
+            position[index] = slot;
+        }
+        keys[slot] = key;
+        ties[slot] = tie;
+        siftDown(siftUp(slot));
+    }
+
+    /**
+     * 取出优先级最高的格子
+     *
+     * @return 格子下标
+     */
+    public int poll() {
+        int top = heap[0];
+        move(--size, 0);
+        if (size > 0) siftDown(0);
+        return top;
+    }
+
+    /**
+     * 从堆中删除格子，格子不在堆中时什么也不做
+     *
+     * @param index 格子下标
+     */
+    public void remove(int index) {
+        if (!contains(index)) return;
+        int slot = position[index];
+        if (slot != --size) {
+            move(size, slot);
+            siftDown(siftUp(slot));
+        }
+    }
+
+    /**
+     * @return 优先级最高的格子，不取出
+     */
+    public int peek() {
+        return heap[0];
+    }
+
+    /**
+     * @return 优先级最高的格子的主键
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * @return 优先级最高的格子的次键
+     */
+    public double peekTie() {
+        return ties[0];
+    }
+
+    private int siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!less(slot, parent)) break;
+            swap(slot, parent);
+            slot = parent;
+        }
+        return slot;
+    }
+
+    private void siftDown(int slot) {
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= size) return;
+            if (child + 1 < size && less(child + 1, child)) child++;
+            if (!less(child, slot)) return;
+            swap(slot, child);
+            slot = child;
+        }
+    }
+
+    private boolean less(int a, int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && ties[a] < ties[b]);
+    }
+
+    private void swap(int a, int b) {
+        int index = heap[a];
+        double key = keys[a];
+        double tie = ties[a];
+        move(b, a);
+        heap[b] = index;
+        keys[b] = key;
+        ties[b] = tie;
+        position[index] = b;
+    }
+
+    private void move(int from, int to) {
+        heap[to] = heap[from];
+        keys[to] = keys[from];
+        ties[to] = ties[from];
+        position[heap[to]] = to;
+    }
+}
@@ -0,0 +1,183 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.stream.IntStream;
+
+/**
+ * <p>JPS+的跳跃距离表</p>
+ * <p>对每个格子的8个方向预先计算不考虑终点时JPS跳跃的结果：正数表示沿该方向走这么多步就是跳点，
+ * 0或负数表示没有跳点，绝对值是撞到障碍物或地图边界之前能走的步数。查询时只需查表，再根据终点的位置修正</p>
+ * <p>跳点的定义与 {@code JPS} 完全一致（包括强制邻居和斜向穿角的规则），所以JPS+的路径与JPS相同</p>
+ * <p>表只依赖障碍物地图，由 {@link MapSnapshot} 在第一次使用时构建，障碍物版本相同的快照共享同一张表。
+ * 横向按行、纵向按列、斜向按对角线并行计算，同一条线上的格子从远端往回递推</p>
+ * <p>距离用 {@code short} 保存，每个格子占16字节，地图的长或宽超过 {@link #MAX_SIDE} 或格子数超过 {@link #MAX_CELLS} 时不支持</p>
+ *
+ * @author 0109
+ * @since 2025-06-01
+ */
+public final class JumpDistanceTable {
+    /**
+     * 支持的最大边长
+     */
+    public static final int MAX_SIDE = Short.MAX_VALUE;
+    /**
+     * 支持的最大格子数，表最大占用64MB
+     */
+    public static final int MAX_CELLS = 1 << 22;
+    /**
+     * 8个方向，下标与 {@link #get(int, int)} 的方向参数对应
+     */
+    public static final int[][] DIRECTIONS = {
+            {0, 1}, {1, 0}, {0, -1}, {-1, 0},
+            {1, 1}, {1, -1}, {-1, -1}, {-1, 1}
+    };
+
+    private final int width;
+    private final int height;
+    private final PackedBitmap obstacles;
+    /**
+     * 第 index 个格子第 direction 个方向的距离保存在 {@code distances[index * 8 + direction]}
+     */
+    private final short[] distances;
+
+    private JumpDistanceTable(@NotNull PackedBitmap obstacles, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.obstacles = obstacles;
+        this.distances = new short[width * height * 8];
+    }
+
+    /**
+     * @param width 地图宽度
+     * @param height 地图高度
+     * @return 能否为这个大小的地图建表，不能时调用方应退回到JPS的扫描
+     */
+    public static boolean supports(int width, int height) {
+        return width <= MAX_SIDE && height <= MAX_SIDE && (long) width * height <= MAX_CELLS;
+    }
+
+    /**
+     * 构建跳跃距离表
+     *
+     * @param obstacles 障碍物位图
+     * @param width 地图宽度
+     * @param height 地图高度
+     * @return 跳跃距离表
+     * @throws IllegalArgumentException 地图的长或宽超过 {@link #MAX_SIDE} 或格子数超过 {@link #MAX_CELLS}
+     */
+    public static @NotNull JumpDistanceTable build(@NotNull PackedBitmap obstacles, int width, int height) {
+        if (!supports(width, height)) {
+            throw new IllegalArgumentException("map " + width + "x" + height + " is too large for a jump distance table");
+        }
+        JumpDistanceTable table = new JumpDistanceTable(obstacles, width, height);
+        //斜向依赖横向和纵向的结果，先算横向和纵向
+        IntStream.range(0, height).parallel().forEach(y -> {
+            table.fillLine(1, width - 1, y);
+            table.fillLine(3, 0, y);
+        });
+        IntStream.range(0, width).parallel().forEach(x -> {
+            table.fillLine(0, x, height - 1);
+            table.fillLine(2, x, 0);
+        });
+        //每条对角线从远端开始，起点是远端所在的那一行或那一列上的格子
+        for (int direction = 4; direction < 8; direction++) {
+            int dx = DIRECTIONS[direction][0];
+            int dy = DIRECTIONS[direction][1];
+            int endX = dx > 0 ? width - 1 : 0;
+            int endY = dy > 0 ? height - 1 : 0;
+            int finalDirection = direction;
+            IntStream.range(0, width + height - 1).parallel().forEach(line -> {
+                if (line < width) {
+                    table.fillLine(finalDirection, endX - dx * line, endY);
+                } else {
+                    table.fillLine(finalDirection, endX, endY - dy * (line - width + 1));
+                }
+            });
+        }
+        return table;
+    }
+
+    /**
+     * 从一条线最远端的格子 (x, y) 开始，逆着方向递推整条线
+     *
+     * @param direction 方向下标
+     */
+    private void fillLine(int direction, int x, int y) {
+        int dx = DIRECTIONS[direction][0];
+        int dy = DIRECTIONS[direction][1];
+        int horizontal = dx == 0 ? -1 : directionOf(dx, 0);
+        int vertical = dy == 0 ? -1 : directionOf(0, dy);
+        //next是当前格子沿方向的下一个格子，一开始在地图外
+        int nextValue = 0;
+        boolean nextBlocked = true;
+        for (; x >= 0 && x < width && y >= 0 && y < height; x -= dx, y -= dy) {
+            int index = y * width + x;
+            int value;
+            if (nextBlocked) {
+                value = 0;
+            } else if (isJumpPointAfter(x, y, dx, dy, horizontal, vertical)) {
+                value = 1;
+            } else {
+                value = nextValue > 0 ? nextValue + 1 : nextValue - 1;
+            }
+            distances[index * 8 + direction] = (short) value;
+            nextValue = value;
+            nextBlocked = obstacles.get(index);
+        }
+    }
+
+    /**
+     * 从 (x, y) 沿方向走一步到达的格子（已知不是障碍物）是否是跳点
+     *
+     * @param horizontal 斜向时对应的横向方向下标
+     * @param vertical 斜向时对应的纵向方向下标
+     */
+    private boolean isJumpPointAfter(int x, int y, int dx, int dy, int horizontal, int vertical) {
+        int nx = x + dx;
+        int ny = y + dy;
+        if (dx != 0 && dy != 0) {
+            if (isObstacleInBounds(x + dx, y) || isObstacleInBounds(x, y + dy)) return true;
+            //横向和纵向的结果已经算好了
+            int next = ny * width + nx;
+            return distances[next * 8 + horizontal] > 0 || distances[next * 8 + vertical] > 0;
+        } else if (dx != 0) {
+            return isObstacleInBounds(nx, y + 1) || isObstacleInBounds(nx, y - 1);
+        } else {
+            return isObstacleInBounds(x - 1, ny) || isObstacleInBounds(x + 1, ny);
+        }
+    }
+
+    private boolean isObstacleInBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height && obstacles.get(y * width + x);
+    }
+
+    /**
+     * 获取不考虑终点时的跳跃距离
+     *
+     * @param index 格子下标
+     * @param direction 方向下标，见 {@link #DIRECTIONS}
+     * @return 正数为到跳点的步数，0或负数的绝对值为撞墙前能走的步数
+     */
+    public int get(int index, int direction) {
+        return distances[index * 8 + direction];
+    }
+
+    /**
+     * @return 方向 (dx, dy) 的下标
+     */
+    public static int directionOf(int dx, int dy) {
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            if (DIRECTIONS[i][0] == dx && DIRECTIONS[i][1] == dy) return i;
+        }
+        throw new IllegalArgumentException("no direction (" + dx + ", " + dy + ")");
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,199 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * <p>ALT（A*, Landmarks, Triangle inequality）启发式的地标距离表</p>
+ * <p>选若干个地标，预先用Dijkstra算出每个地标到所有格子的最短距离。对任意地标L，由三角不等式
+ * {@code d(a,b) >= |d(L,a) - d(L,b)|}，取所有地标中的最大值作为a到b的下界。
+ * 墙体很长的迷宫式地图上曼哈顿距离和八方向距离都严重低估真实距离，这个下界能绕过墙体，大幅减少A*扩展的格子</p>
+ * <p>地标取地图四个角和四条边的中点附近最近的空闲格子，角优先且相对的角相邻选取，让地标尽量分散在地图外围。
+ * 每个地标的Dijkstra互相独立，在公共的fork-join线程池中并行计算</p>
+ * <p>距离只按移动代价（直走1，斜走√2，不能穿角）计算，不包含已探索格子的额外代价，额外代价非负，所以下界仍然成立。
+ * 同一个格子的所有地标距离连续存放，查询一个格子只读一段连续内存。距离必须用 {@code double} 保存：
+ * 八方向网格上代价相同的最短路径非常多，A*靠f值严格相等时比较h值来只沿一条路径扩展，
+ * 用 {@code float} 保存时下界的舍入误差打乱了这些相等的f值，扩展的格子会多出几十倍</p>
+ * <p>表只依赖障碍物地图，由 {@link MapSnapshot} 在第一次使用时交给后台线程构建，障碍物版本相同的快照共享同一张表。
+ * 地标数量按 {@link #MAX_ENTRIES} 随地图大小减少，地图太大时没有地标，下界恒为0</p>
+ *
+ * @author 0109
+ * @since 2025-06-07
+ */
+public final class LandmarkTable {
+    /**
+     * 最多使用的地标数量
+     */
+    public static final int MAX_LANDMARKS = 8;
+    /**
+     * 整张表最多保存的距离数量，每个距离8字节
+     */
+    public static final int MAX_ENTRIES = 1 << 23;
+    private static final double UNREACHABLE = Double.POSITIVE_INFINITY;
+    private static final double DIAGONAL_COST = Math.sqrt(2);
+
+    private final int width;
+    private final int height;
+    private final int[] landmarks;
+    /**
+     * 第 index 个格子到第 k 个地标的距离保存在 {@code distances[index * landmarks.length + k]}，不可达时为正无穷
+     */
+    private final double[] distances;
+
+    private LandmarkTable(int width, int height, @NotNull int[] landmarks) {
+        this.width = width;
+        this.height = height;
+        this.landmarks = landmarks;
+        this.distances = new double[width * height * landmarks.length];
+    }
+
+    /**
+     * 构建地标距离表
+     *
+     * @param obstacles 障碍物位图
+     * @param width 地图宽度
+     * @param height 地图高度
+     * @return 地标距离表
+     */
+    public static @NotNull LandmarkTable build(@NotNull PackedBitmap obstacles, int width, int height) {
+        long cells = (long) width * height;
+        int count = cells == 0 ? 0 : (int) Math.min(MAX_LANDMARKS, MAX_ENTRIES / cells);
+        LandmarkTable table = new LandmarkTable(width, height, selectLandmarks(obstacles, width, height, count));
+        Arrays.fill(table.distances, UNREACHABLE);
+        IntStream.range(0, table.landmarks.length).parallel()
+                .forEach(k -> table.fillDistances(obstacles, k));
+        return table;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return 地标的数量
+     */
+    public int size() {
+        return landmarks.length;
+    }
+
+    /**
+     * @param k 地标的序号
+     * @return 第 k 个地标的格子下标
+     */
+    public int getLandmark(int k) {
+        return landmarks[k];
+    }
+
+    /**
+     * 按三角不等式计算两个格子之间最短距离的下界，两个格子都不可达的地标不参与计算
+     *
+     * @param a 格子下标
+     * @param b 格子下标
+     * @return 最短距离的下界，没有可用的地标时为0
+     */
+    public double lowerBound(int a, int b) {
+        int count = landmarks.length;
+        int offsetA = a * count;
+        int offsetB = b * count;
+        double bound = 0;
+        for (int k = 0; k < count; k++) {
+            double distanceA = distances[offsetA + k];
+            double distanceB = distances[offsetB + k];
+            if (distanceA == UNREACHABLE || distanceB == UNREACHABLE) continue;
+            double difference = Math.abs(distanceA - distanceB);
+            if (difference > bound) bound = difference;
+        }
+        return bound;
+    }
+
+    /**
+     * 依次在四个角和四条边的中点附近找最近的空闲格子作为地标，重复的跳过
+     */
+    private static @NotNull int[] selectLandmarks(@NotNull PackedBitmap obstacles, int width, int height, int count) {
+        int[][] anchors = {
+                {0, 0}, {width - 1, height - 1}, {width - 1, 0}, {0, height - 1},
+                {width / 2, 0}, {width / 2, height - 1}, {0, height / 2}, {width - 1, height / 2}
+        };
+        int[] result = new int[Math.min(count, anchors.length)];
+        int selected = 0;
+        for (int i = 0; i < anchors.length && selected < result.length; i++) {
+            int landmark = nearestFreeCell(obstacles, width, height, anchors[i][0], anchors[i][1]);
+            if (landmark < 0) break;
+            boolean duplicate = false;
+            for (int j = 0; j < selected; j++) {
+                if (result[j] == landmark) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) result[selected++] = landmark;
+        }
+        return Arrays.copyOf(result, selected);
+    }
+
+    /**
+     * 以给定格子为中心一圈一圈向外找空闲格子
+     *
+     * @return 空闲格子的下标，地图上没有空闲格子时返回-1
+     */
+    private static int nearestFreeCell(@NotNull PackedBitmap obstacles, int width, int height, int x, int y) {
+        int maxRadius = Math.max(width, height);
+        for (int radius = 0; radius <= maxRadius; radius++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                int ny = y + dy;
+                if (ny < 0 || ny >= height) continue;
+                //不在最上或最下一行时只检查这一圈的左右两个格子
+                int step = dy == -radius || dy == radius ? 1 : Math.max(1, 2 * radius);
+                for (int dx = -radius; dx <= radius; dx += step) {
+                    int nx = x + dx;
+                    if (nx < 0 || nx >= width) continue;
+                    int index = ny * width + nx;
+                    if (!obstacles.get(index)) return index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 从第 k 个地标出发运行Dijkstra，填入所有可达格子到它的距离
+     */
+    private void fillDistances(@NotNull PackedBitmap obstacles, int k) {
+        int count = landmarks.length;
+        int source = landmarks[k];
+        RadixHeap openList = new RadixHeap();
+        distances[source * count + k] = 0;
+        openList.push(source, 0);
+        while (!openList.isEmpty()) {
+            int current = openList.poll();
+            double distance = distances[current * count + k];
+            if (openList.lastKey() > distance) continue;
+            int x = current % width;
+            int y = current / width;
+            for (int dy = -1; dy <= 1; dy++) {
+                int ny = y + dy;
+                if (ny < 0 || ny >= height) continue;
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dx == 0 && dy == 0) continue;
+                    int nx = x + dx;
+                    if (nx < 0 || nx >= width) continue;
+                    int neighbor = current + dy * width + dx;
+                    if (obstacles.get(neighbor)) continue;
+                    boolean diagonal = dx != 0 && dy != 0;
+                    if (diagonal && (obstacles.get(current + dx) || obstacles.get(current + dy * width))) continue;
+                    double tentative = distance + (diagonal ? DIAGONAL_COST : 1);
+                    if (tentative < distances[neighbor * count + k]) {
+                        distances[neighbor * count + k] = tentative;
+                        openList.push(neighbor, tentative);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * <p>某一版本地图的不可变快照</p>
+ * <p>同一版本的地图只从Redis读取、解码一次，所有并发的路径规划任务只读共享同一个快照。
+ * 连通分量、未探索格子前缀和等派生数据在第一次使用时构建，之后所有小车复用。
+ * 每份派生数据单独加锁，构建较慢的数据时不影响其他数据的读取，地标距离表在后台线程中构建</p>
+ * <p>快照持有的字节数组在构造后不会再被修改，调用方也不能修改。地图增量更新时写时复制，
+ * 只复制被修改的位图，障碍物没有变化时新快照直接沿用旧快照的障碍物位图和所有由障碍物派生的数据</p>
+ * <p>每辆车自己的可变数据（起点、终点、不可达标记）放在 {@link GridMap} 中，
+ * 单次搜索的临时数据放在线程私有的 {@link SearchState} 中</p>
+ *
+ * @author 0109
+ * @since 2025-05-21
+ */
+public final class MapSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(MapSnapshot.class);
+    /**
+     * 在后台构建地标距离表的线程，构建期间不占用处理请求的线程
+     */
+    private static final ExecutorService BACKGROUND_BUILDER = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("landmark-builder").daemon().factory());
+
+    private final long version;
+    /**
+     * 障碍物位图最后一次变化时的版本号，障碍物版本相同的快照共享同一个障碍物位图
+     */
+    private final long obstacleVersion;
+    private final int width;
+    private final int height;
+    private final byte[] visitedMap;
+    private final byte[] obstacleMap;
+    private final PackedBitmap visited;
+    private final PackedBitmap obstacles;
+    /**
+     * 由障碍物派生的数据，障碍物版本相同的快照共享同一组容器，任何一个快照构建后其他快照都能直接使用
+     */
+    private final Derived<ConnectedComponents> components;
+    private final Derived<ObstacleBitboard> obstacleBitboard;
+    private final Derived<JumpDistanceTable> jumpDistances;
+    private final Derived<ClusterGraph> clusterGraph;
+    private final Derived<LandmarkTable> landmarks;
+    private final Derived<AllPairsTable> allPairs;
+    private final Derived<SummedAreaTable> unexplored;
+    /**
+     * 障碍物变化前最近一个已经构建过簇图的快照的簇图和障碍物位图，用于增量更新簇图，构建完成后释放
+     */
+    private volatile ClusterGraph baseClusterGraph;
+    private volatile PackedBitmap baseObstacles;
+
+    @Contract(pure = true)
+    public MapSnapshot(long version, int width, int height, @NotNull byte[] visitedMap, @NotNull byte[] obstacleMap) {
+        this.version = version;
+        this.obstacleVersion = version;
+        this.width = width;
+        this.height = height;
+        this.visitedMap = visitedMap;
+        this.obstacleMap = obstacleMap;
+        this.visited = new PackedBitmap(visitedMap);
+        this.obstacles = new PackedBitmap(obstacleMap);
+        this.components = new Derived<>();
+        this.obstacleBitboard = new Derived<>();
+        this.jumpDistances = new Derived<>();
+        this.clusterGraph = new Derived<>();
+        this.landmarks = new Derived<>();
+        this.allPairs = new Derived<>();
+        this.unexplored = new Derived<>();
+    }
+
+    private MapSnapshot(long version, @NotNull MapSnapshot previous, @NotNull byte[] visitedMap) {
+        this.version = version;
+        this.obstacleVersion = previous.obstacleVersion;
+        this.width = previous.width;
+        this.height = previous.height;
+        this.visitedMap = visitedMap;
+        this.obstacleMap = previous.obstacleMap;
+        this.visited = new PackedBitmap(visitedMap);
+        this.obstacles = previous.obstacles;
+        this.components = previous.components;
+        this.obstacleBitboard = previous.obstacleBitboard;
+        this.jumpDistances = previous.jumpDistances;
+        this.clusterGraph = previous.clusterGraph;
+        this.landmarks = previous.landmarks;
+        this.allPairs = previous.allPairs;
+        this.unexplored = visitedMap == previous.visitedMap ? previous.unexplored : new Derived<>();
+        this.baseClusterGraph = previous.baseClusterGraph;
+        this.baseObstacles = previous.baseObstacles;
+    }
+
+    /**
+     * <p>在当前快照的基础上生成新版本的快照</p>
+     * <p>传入的位图必须是新复制的数组或当前快照自己的数组，障碍物位图没有变化时沿用当前快照的连通分量、障碍物位板、跳跃距离表、地标距离表、全源最短路径表和簇图，
+     * 变化时新快照记住当前的簇图，第一次需要簇图时只重新计算变化的簇</p>
+     *
+     * @param version 新的版本号
+     * @param visitedMap 新的已探索位图
+     * @param obstacleMap 新的障碍物位图
+     * @return 新版本的快照
+     */
+    public @NotNull MapSnapshot next(long version, @NotNull byte[] visitedMap, @NotNull byte[] obstacleMap) {
+        if (obstacleMap == this.obstacleMap) return new MapSnapshot(version, this, visitedMap);
+        MapSnapshot result = new MapSnapshot(version, width, height, visitedMap, obstacleMap);
+        ClusterGraph graph = clusterGraph.getIfBuilt();
+        if (null != graph) {
+            result.baseClusterGraph = graph;
+            result.baseObstacles = obstacles;
+        } else {
+            result.baseClusterGraph = baseClusterGraph;
+            result.baseObstacles = baseObstacles;
+        }
+        return result;
+    }
+
+    /**
+     * @return 障碍物地图的连通分量，第一次调用时构建
+     */
+    public @NotNull ConnectedComponents getComponents() {
+        return components.get(() -> ConnectedComponents.label(obstacleMap, width, height));
+    }
+
+    /**
+     * @return 未探索格子的前缀和，第一次调用时构建
+     */
+    public @NotNull SummedAreaTable getUnexplored() {
+        return unexplored.get(() -> SummedAreaTable.build(visitedMap, width, height));
+    }
+
+    /**
+     * @return 按行和按列打包的障碍物位板，第一次调用时构建
+     */
+    public @NotNull ObstacleBitboard getObstacleBitboard() {
+        return obstacleBitboard.get(() -> ObstacleBitboard.build(obstacles, width, height));
+    }
+
+    /**
+     * @return JPS+的跳跃距离表，第一次调用时构建
+     * @throws IllegalArgumentException 地图太大，见 {@link JumpDistanceTable#supports(int, int)}
+     */
+    public @NotNull JumpDistanceTable getJumpDistances() {
+        return jumpDistances.get(() -> JumpDistanceTable.build(obstacles, width, height));
+    }
+
+    /**
+     * <p>ALT启发式的地标距离表</p>
+     * <p>大地图上构建需要秒级时间，不在请求线程中构建：第一次调用时交给后台线程，构建完成前返回 null，
+     * 调用方改用不依赖地标的启发函数。后台任务只引用容器的弱引用，开始前所有共享这张表的快照都已经被回收时直接跳过</p>
+     * <p>构建失败时记录警告并清除请求标记，之后的调用会重新交给后台线程</p>
+     *
+     * @return 已经构建完成的地标距离表，还没有构建完成时返回 null
+     */
+    public @Nullable LandmarkTable getLandmarksIfReady() {
+        LandmarkTable result = landmarks.getIfBuilt();
+        if (null == result && landmarks.markRequested()) {
+            PackedBitmap obstacles = this.obstacles;
+            int width = this.width;
+            int height = this.height;
+            WeakReference<Derived<LandmarkTable>> target = new WeakReference<>(landmarks);
+            BACKGROUND_BUILDER.execute(() -> {
+                Derived<LandmarkTable> holder = target.get();
+                if (null == holder) return;
+                try {
+                    holder.get(() -> LandmarkTable.build(obstacles, width, height));
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    logger.warn("Failed to build the landmark table for a {}x{} map, will retry on a later request",
+                            width, height, e);
+                    holder.clearRequest();
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * @return 全源最短路径表，第一次调用时构建
+     * @throws IllegalArgumentException 地图太大，见 {@link AllPairsTable#supports(int, int)}
+     */
+    public @NotNull AllPairsTable getAllPairs() {
+        return allPairs.get(() -> AllPairsTable.build(obstacles, width, height));
+    }
+
+    /**
+     * @return HPA*的抽象簇图，第一次调用时构建，有旧簇图时增量更新
+     */
+    public @NotNull ClusterGraph getClusterGraph() {
+        return clusterGraph.get(() -> {
+            ClusterGraph base = baseClusterGraph;
+            ClusterGraph result;
+            if (null != base && base.getWidth() == width && base.getHeight() == height) {
+                result = base.update(obstacles, baseObstacles.diff(obstacles, width * height));
+            } else {
+                result = ClusterGraph.build(obstacles, width, height);
+            }
+            baseClusterGraph = null;
+            baseObstacles = null;
+            return result;
+        });
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getObstacleVersion() {
+        return obstacleVersion;
+    }
+
+    /**
+     * @return 已探索位图，只读
+     */
+    public @NotNull byte[] getVisitedMap() {
+        return visitedMap;
+    }
+
+    /**
+     * @return 障碍物位图，只读
+     */
+    public @NotNull byte[] getObstacleMap() {
+        return obstacleMap;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public @NotNull PackedBitmap getVisited() {
+        return visited;
+    }
+
+    public @NotNull PackedBitmap getObstacles() {
+        return obstacles;
+    }
+
+    /**
+     * <p>第一次使用时构建的派生数据</p>
+     * <p>每份数据有自己的锁，构建一份数据时不会阻塞读取或构建其他数据的线程</p>
+     */
+    private static final class Derived<T> {
+        private volatile T value;
+        private boolean requested;
+
+        private @NotNull T get(@NotNull Supplier<T> builder) {
+            T result = value;
+            if (null == result) {
+                synchronized (this) {
+                    result = value;
+                    if (null == result) {
+                        result = builder.get();
+                        value = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private @Nullable T getIfBuilt() {
+            return value;
+        }
+
+        /**
+         * @return 第一次调用且还没有构建时返回 true，调用方负责安排构建
+         */
+        private synchronized boolean markRequested() {
+            if (requested || null != value) return false;
+            requested = true;
+            return true;
+        }
+
+        /**
+         * 安排的构建失败后调用，下一次 {@link #markRequested()} 重新返回 true
+         */
+        private synchronized void clearRequest() {
+            requested = false;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * <p>按行和按列打包的障碍物位板</p>
+ * <p>每一行（列）的障碍物打包成若干个64位字，第 x 个格子对应第 {@code x / 64} 个字从低位数起的第 {@code x % 64} 位。
+ * 沿一行（列）寻找下一个障碍物时一次检查64个格子，用 {@link Long#numberOfTrailingZeros(long)}
+ * 或 {@link Long#numberOfLeadingZeros(long)} 直接定位，JPS的直线跳跃不再逐格前进</p>
+ * <p>位板只依赖障碍物地图，由 {@link MapSnapshot} 在第一次使用时构建，障碍物版本相同的快照共享同一个位板</p>
+ *
+ * @author 0109
+ * @since 2025-06-01
+ */
+public final class ObstacleBitboard {
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final int wordsPerColumn;
+    private final long[] rows;
+    private final long[] columns;
+
+    private ObstacleBitboard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.wordsPerColumn = (height + 63) >>> 6;
+        this.rows = new long[height * wordsPerRow];
+        this.columns = new long[width * wordsPerColumn];
+    }
+
+    /**
+     * 从障碍物位图构建位板
+     *
+     * @param obstacles 障碍物位图
+     * @param width 地图宽度
+     * @param height 地图高度
+     * @return 位板
+     */
+    public static @NotNull ObstacleBitboard build(@NotNull PackedBitmap obstacles, int width, int height) {
+        ObstacleBitboard bitboard = new ObstacleBitboard(width, height);
+        for (int y = 0, index = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, index++) {
+                if (obstacles.get(index)) {
+                    bitboard.rows[y * bitboard.wordsPerRow + (x >>> 6)] |= 1L << x;
+                    bitboard.columns[x * bitboard.wordsPerColumn + (y >>> 6)] |= 1L << y;
+                }
+            }
+        }
+        return bitboard;
+    }
+
+    /**
+     * 在第 y 行中从 fromX（包含）开始沿给定方向寻找第一个障碍物
+     *
+     * @param forward 为 true 时向x增大的方向寻找
+     * @return 障碍物的x坐标，没有时返回越界的坐标（{@code width} 或 -1）
+     */
+    public int nextObstacleInRow(int y, int fromX, boolean forward) {
+        return scan(rows, wordsPerRow, height, width, y, y, fromX, forward);
+    }
+
+    /**
+     * 在第 y 行中从 fromX（包含）开始沿给定方向寻找第一个上方或下方相邻格子是障碍物的格子，越界的行不算障碍物
+     *
+     * @param forward 为 true 时向x增大的方向寻找
+     * @return 格子的x坐标，没有时返回越界的坐标（{@code width} 或 -1）
+     */
+    public int nextObstacleBesideRow(int y, int fromX, boolean forward) {
+        return scan(rows, wordsPerRow, height, width, y - 1, y + 1, fromX, forward);
+    }
+
+    /**
+     * 在第 x 列中从 fromY（包含）开始沿给定方向寻找第一个障碍物
+     *
+     * @param forward 为 true 时向y增大的方向寻找
+     * @return 障碍物的y坐标，没有时返回越界的坐标（{@code height} 或 -1）
+     */
+    public int nextObstacleInColumn(int x, int fromY, boolean forward) {
+        return scan(columns, wordsPerColumn, width, height, x, x, fromY, forward);
+    }
+
+    /**
+     * 在第 x 列中从 fromY（包含）开始沿给定方向寻找第一个左侧或右侧相邻格子是障碍物的格子，越界的列不算障碍物
+     *
+     * @param forward 为 true 时向y增大的方向寻找
+     * @return 格子的y坐标，没有时返回越界的坐标（{@code height} 或 -1）
+     */
+    public int nextObstacleBesideColumn(int x, int fromY, boolean forward) {
+        return scan(columns, wordsPerColumn, width, height, x - 1, x + 1, fromY, forward);
+    }
+
+    /**
+     * 在两条线（可以是同一条）按位或的结果中，从 from 开始寻找第一个为1的位
+     */
+    private static int scan(long[] bits, int words, int lineCount, int length,
+                            int lineA, int lineB, int from, boolean forward) {
+        if (forward) {
+            if (from >= length) return length;
+            if (from < 0) from = 0;
+            int w = from >>> 6;
+            long word = word(bits, words, lineCount, lineA, lineB, w) & (-1L << from);
+            while (word == 0) {
+                if (++w >= words) return length;
+                word = word(bits, words, lineCount, lineA, lineB, w);
+            }
+            return Math.min((w << 6) + Long.numberOfTrailingZeros(word), length);
+        } else {
+            if (from < 0) return -1;
+            if (from >= length) from = length - 1;
+            int w = from >>> 6;
+            long word = word(bits, words, lineCount, lineA, lineB, w) & (-1L >>> (63 - (from & 63)));
+            while (word == 0) {
+                if (--w < 0) return -1;
+                word = word(bits, words, lineCount, lineA, lineB, w);
+            }
+            return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+        }
+    }
+
+    private static long word(long[] bits, int words, int lineCount, int lineA, int lineB, int w) {
+        long word = 0;
+        if (lineA >= 0 && lineA < lineCount) word = bits[lineA * words + w];
+        if (lineB != lineA && lineB >= 0 && lineB < lineCount) word |= bits[lineB * words + w];
+        return word;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
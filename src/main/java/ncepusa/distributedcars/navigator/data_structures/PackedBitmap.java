@@ -0,0 +1,67 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * <p>只读的打包位图</p>
+ * <p>直接包装从Redis读到的 {@code byte[]}，不做任何拷贝和展开。
+ * 第 index 个格子对应 {@code bytes[index / 8]} 从高位数起的第 {@code index % 8} 位（高位在前），
+ * 与模拟器写入 {@code map}、{@code obstacle_map} 的格式一致</p>
+ * <p>超出字节数组长度的位一律视为0</p>
+ *
+ * @author 0109
+ * @since 2025-05-21
+ */
+public final class PackedBitmap {
+    private final byte[] bytes;
+
+    @Contract(pure = true)
+    public PackedBitmap(@NotNull byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @param index 格子下标
+     * @return 该位是否为1
+     */
+    public boolean get(int index) {
+        int byteIndex = index >>> 3;
+        return byteIndex < bytes.length && (bytes[byteIndex] & (0x80 >>> (index & 7))) != 0;
+    }
+
+    /**
+     * <p>找出两个位图中取值不同的位，逐字节比较，只展开不同的字节</p>
+     * @param other 另一个位图
+     * @param limit 只比较下标小于 limit 的位
+     * @return 取值不同的位的下标，升序
+     */
+    public @NotNull int[] diff(@NotNull PackedBitmap other, int limit) {
+        int[] result = new int[16];
+        int count = 0;
+        int byteCount = Math.min(Math.max(bytes.length, other.bytes.length), (limit + 7) >>> 3);
+        for (int i = 0; i < byteCount; i++) {
+            int a = i < bytes.length ? bytes[i] : 0;
+            int b = i < other.bytes.length ? other.bytes[i] : 0;
+            int changed = (a ^ b) & 0xff;
+            while (changed != 0) {
+                int bit = Integer.numberOfLeadingZeros(changed) - 24;
+                changed &= ~(0x80 >>> bit);
+                int index = (i << 3) + bit;
+                if (index >= limit) continue;
+                if (count == result.length) result = Arrays.copyOf(result, count * 2);
+                result[count++] = index;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return 位图能表示的位数
+     */
+    public int length() {
+        return bytes.length * 8;
+    }
+}
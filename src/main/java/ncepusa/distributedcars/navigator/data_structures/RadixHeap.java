@@ -0,0 +1,122 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import java.util.Arrays;
+
+/**
+ * <p>单调基数堆，用作Dijkstra的开放列表</p>
+ * <p>Dijkstra出队的代价单调不减，且代价都是非负的double，非负double的位模式按long比较和按数值比较顺序一致。
+ * 按“与上一次出队代价的最高不同位”把条目分到65个桶中，入队O(1)，
+ * 出队时只重新分配最小的非空桶，均摊代价与桶数有关而与堆大小无关，比二叉堆少大量比较</p>
+ * <p>不支持decrease-key，同一个格子可以多次入队，调用方用出队代价和当前g值比较来跳过过期条目</p>
+ * <p>桶数组只增不减，开放列表是线程私有的，预热之后搜索过程中不分配内存</p>
+ *
+ * @author 0109
+ * @since 2025-06-02
+ */
+public class RadixHeap {
+    private static final ThreadLocal<RadixHeap> CURRENT = ThreadLocal.withInitial(RadixHeap::new);
+    private static final int BUCKET_COUNT = 65;
+    private static final int INITIAL_BUCKET_CAPACITY = 16;
+
+    private final long[][] keys = new long[BUCKET_COUNT][];
+    private final int[][] values = new int[BUCKET_COUNT][];
+    private final int[] sizes = new int[BUCKET_COUNT];
+    /**
+     * 上一次出队的代价的位模式
+     */
+    private long last;
+    private int size;
+
+    /**
+     * 获取当前线程的开放列表，返回前已清空
+     *
+     * @return 当前线程的开放列表
+     */
+    public static RadixHeap forCurrentThread() {
+        RadixHeap openList = CURRENT.get();
+        openList.clear();
+        return openList;
+    }
+
+    public void clear() {
+        Arrays.fill(sizes, 0);
+        size = 0;
+        last = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 加入条目
+     *
+     * @param value 格子下标
+     * @param key 代价，不能小于上一次出队的代价，也不能是负数
+     * @throws IllegalArgumentException 代价比上一次出队的代价小
+     */
+    public void push(int value, double key) {
+        long bits = Double.doubleToRawLongBits(key);
+        if (bits < last) {
+            throw new IllegalArgumentException("key " + key + " is less than the last popped key " + lastKey());
+        }
+        append(bucketOf(bits), bits, value);
+        size++;
+    }
+
+    /**
+     * 取出代价最小的条目，代价可通过 {@link #lastKey()} 获取
+     *
+     * @return 格子下标
+     */
+    public int poll() {
+        if (sizes[0] == 0) {
+            int bucket = 1;
+            while (sizes[bucket] == 0) bucket++;
+            long[] bucketKeys = keys[bucket];
+            int[] bucketValues = values[bucket];
+            int count = sizes[bucket];
+            long min = bucketKeys[0];
+            for (int i = 1; i < count; i++) {
+                if (bucketKeys[i] < min) min = bucketKeys[i];
+            }
+            last = min;
+            sizes[bucket] = 0;
+            //这个桶中的条目与新的last的最高不同位一定更低，重新分配后都落在更小的桶中
+            for (int i = 0; i < count; i++) {
+                append(bucketOf(bucketKeys[i]), bucketKeys[i], bucketValues[i]);
+            }
+        }
+        size--;
+        return values[0][--sizes[0]];
+    }
+
+    /**
+     * @return 上一次出队的代价
+     */
+    public double lastKey() {
+        return Double.longBitsToDouble(last);
+    }
+
+    private int bucketOf(long bits) {
+        return bits == last ? 0 : 64 - Long.numberOfLeadingZeros(bits ^ last);
+    }
+
+    private void append(int bucket, long key, int value) {
+        int count = sizes[bucket];
+        if (null == keys[bucket]) {
+            keys[bucket] = new long[INITIAL_BUCKET_CAPACITY];
+            values[bucket] = new int[INITIAL_BUCKET_CAPACITY];
+        } else if (count == keys[bucket].length) {
+            keys[bucket] = Arrays.copyOf(keys[bucket], count * 2);
+            values[bucket] = Arrays.copyOf(values[bucket], count * 2);
+        }
+        keys[bucket][count] = key;
+        values[bucket][count] = value;
+        sizes[bucket] = count + 1;
+    }
+}
@@ -0,0 +1,139 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import java.util.Arrays;
+
+/**
+ * <p>单次搜索使用的临时状态（g值、父节点和关闭标记）</p>
+ * <p>每个格子都带有一个代数戳，只有戳等于当前代数的数据才有效，其余格子视为未被搜索过。
+ * 开始新的搜索时只需把代数加一，不需要遍历整个地图重置g值和关闭列表，代价是O(1)，与地图大小无关</p>
+ * <p>搜索状态是线程私有的，每个线程一份，容量按该线程见过的最大地图分配，所有地图快照和小车复用。
+ * 双向搜索的反向一侧另外使用 {@link #reverseForCurrentThread(int)} 的一份</p>
+ *
+ * @author 0109
+ * @since 2025-05-21
+ */
+public class SearchState {
+    private static final ThreadLocal<SearchState> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<SearchState> REVERSE = new ThreadLocal<>();
+
+    private final double[] g;
+    private final int[] parent;
+    private final int[] stamp;
+    /**
+     * 关闭标记的代数戳，等于当前代数的格子已关闭
+     */
+    private final int[] closedStamp;
+    /**
+     * 广度优先搜索的队列，每个格子最多入队一次，容量等于格子数量
+     */
+    private int[] queue;
+    /**
+     * 当前代数，从1开始，戳为0的格子永远无效
+     */
+    private int epoch = 1;
+
+    public SearchState(int size) {
+        this.g = new double[size];
+        this.parent = new int[size];
+        this.stamp = new int[size];
+        this.closedStamp = new int[size];
+    }
+
+    /**
+     * 获取当前线程的搜索状态，容量不足时重新分配
+     *
+     * @param size 需要的格子数量
+     * @return 当前线程的搜索状态
+     */
+    public static SearchState forCurrentThread(int size) {
+        return forCurrentThread(CURRENT, size);
+    }
+
+    /**
+     * 获取当前线程给双向搜索反向一侧使用的搜索状态，与 {@link #forCurrentThread(int)} 互不影响
+     *
+     * @param size 需要的格子数量
+     * @return 当前线程反向搜索的搜索状态
+     */
+    public static SearchState reverseForCurrentThread(int size) {
+        return forCurrentThread(REVERSE, size);
+    }
+
+    private static SearchState forCurrentThread(ThreadLocal<SearchState> holder, int size) {
+        SearchState state = holder.get();
+        if (null == state || state.capacity() < size) {
+            state = new SearchState(size);
+            holder.set(state);
+        }
+        return state;
+    }
+
+    /**
+     * 使之前写入的所有数据失效
+     */
+    public void reset() {
+        if (++epoch == Integer.MAX_VALUE) {
+            //代数溢出时才真正清空一次，约21亿次搜索发生一次
+            Arrays.fill(stamp, 0);
+            Arrays.fill(closedStamp, 0);
+            epoch = 1;
+        }
+    }
+
+    public double getG(int index) {
+        return stamp[index] == epoch ? g[index] : GridMap.INFINITE_G;
+    }
+
+    public void setG(int index, double gCost) {
+        touch(index);
+        g[index] = gCost;
+    }
+
+    public int getParent(int index) {
+        return stamp[index] == epoch ? parent[index] : GridMap.NO_PARENT;
+    }
+
+    public void setParent(int index, int parentIndex) {
+        touch(index);
+        parent[index] = parentIndex;
+    }
+
+    public boolean isClosed(int index) {
+        return closedStamp[index] == epoch;
+    }
+
+    /**
+     * 关闭格子
+     *
+     * @param index 格子下标
+     * @return 格子之前没有关闭时返回 true
+     */
+    public boolean close(int index) {
+        if (closedStamp[index] == epoch) return false;
+        closedStamp[index] = epoch;
+        return true;
+    }
+
+    /**
+     * @return 容量等于格子数量的队列缓冲区，第一次使用时分配，内容不会被清空
+     */
+    public int[] getQueue() {
+        if (null == queue) queue = new int[capacity()];
+        return queue;
+    }
+
+    public int capacity() {
+        return stamp.length;
+    }
+
+    /**
+     * 第一次在本代写入某个格子时，先把旧数据换成默认值
+     */
+    private void touch(int index) {
+        if (stamp[index] != epoch) {
+            stamp[index] = epoch;
+            g[index] = GridMap.INFINITE_G;
+            parent[index] = GridMap.NO_PARENT;
+        }
+    }
+}
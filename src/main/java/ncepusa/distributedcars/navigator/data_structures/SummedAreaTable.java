@@ -0,0 +1,74 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * <p>未探索格子的二维前缀和（积分图）</p>
+ * <p>{@code sums[(y + 1) * (width + 1) + (x + 1)]} 保存矩形 [0, x] × [0, y] 内未探索格子的数量，
+ * 建好之后任意矩形窗口内的未探索格子数都可以用4次查表得到，是O(1)的</p>
+ * <p>每个地图快照只构建一次，所有小车共享，不可修改</p>
+ *
+ * @author 0109
+ * @since 2025-05-21
+ */
+public final class SummedAreaTable {
+    private final int width;
+    private final int height;
+    private final int[] sums;
+
+    private SummedAreaTable(int width, int height, int[] sums) {
+        this.width = width;
+        this.height = height;
+        this.sums = sums;
+    }
+
+    /**
+     * 构建未探索格子的前缀和，一次线性扫描
+     *
+     * @param visitedMap Redis中的已探索位图
+     * @param width 地图宽度
+     * @param height 地图高度
+     * @return 未探索格子的前缀和
+     */
+    public static @NotNull SummedAreaTable build(@NotNull byte[] visitedMap, int width, int height) {
+        PackedBitmap visited = new PackedBitmap(visitedMap);
+        int stride = width + 1;
+        int[] sums = new int[stride * (height + 1)];
+        for (int y = 0; y < height; y++) {
+            int rowSum = 0;
+            for (int x = 0; x < width; x++) {
+                if (!visited.get(y * width + x)) rowSum++;
+                sums[(y + 1) * stride + x + 1] = sums[y * stride + x + 1] + rowSum;
+            }
+        }
+        return new SummedAreaTable(width, height, sums);
+    }
+
+    /**
+     * 统计矩形窗口内未探索格子的数量，窗口超出地图的部分会被裁掉
+     *
+     * @param startX 窗口左边界（包含）
+     * @param startY 窗口上边界（包含）
+     * @param endX 窗口右边界（不包含）
+     * @param endY 窗口下边界（不包含）
+     * @return 未探索格子的数量
+     */
+    public int count(int startX, int startY, int endX, int endY) {
+        startX = Math.max(startX, 0);
+        startY = Math.max(startY, 0);
+        endX = Math.min(endX, width);
+        endY = Math.min(endY, height);
+        if (startX >= endX || startY >= endY) return 0;
+        int stride = width + 1;
+        return sums[endY * stride + endX] - sums[startY * stride + endX]
+                - sums[endY * stride + startX] + sums[startY * stride + startX];
+    }
+
+    /**
+     * 统计格子自身及其8个邻居中未探索格子的数量
+     */
+    public int countUnexploredNeighbors(int x, int y) {
+        return count(x - 1, y - 1, x + 2, y + 2);
+    }
+
+}
@@ -1,34 +1,32 @@
 package ncepusa.distributedcars.navigator.data_structures;
 
 import org.jetbrains.annotations.NotNull;
-import org.springframework.data.geo.Point;
-
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * <p>并查集</p>
+ * <p>用基本类型数组保存父节点和集合大小，按大小合并并在查找时做路径减半，find()不会产生装箱</p>
  *
  * @author TraeAI
  * @since 2025-06-04
- * @version 1.0
+ * @version 1.1
  */
 public class UnionFind {
-    private List<Integer> parent;
+    private final int[] parent;
+    private final int[] size;
 
     public UnionFind(int width, int height) {
-        parent = new ArrayList<>();
-        for(int j = 0; j < height; j++) {
-            for(int i = 0; i < width; i++) {
-                parent.add(j * width + i);
-            }
+        parent = new int[width * height];
+        size = new int[width * height];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+            size[i] = 1;
         }
     }
 
     public int find(int p) {
-        while (p != parent.get(p)) {
-            parent.set(p, parent.get(parent.get(p)));
-            p = parent.get(p);
+        while (p != parent[p]) {
+            parent[p] = parent[parent[p]];
+            p = parent[p];
         }
         return p;
     }
@@ -37,7 +35,13 @@ public class UnionFind {
         int rootP = find(p);
         int rootQ = find(q);
         if (rootP == rootQ) return;
-        parent.set(rootQ, rootP);
+        if (size[rootP] < size[rootQ]) {
+            int tmp = rootP;
+            rootP = rootQ;
+            rootQ = tmp;
+        }
+        parent[rootQ] = rootP;
+        size[rootP] += size[rootQ];
     }
     /**
      * 统计gridMap中的连通块数量
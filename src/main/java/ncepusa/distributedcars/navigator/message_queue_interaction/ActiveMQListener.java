@@ -4,22 +4,32 @@ import io.micrometer.prometheusmetrics.PrometheusConfig;
 import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
 import ncepusa.distributedcars.navigator.algorithm.*;
 import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import ncepusa.distributedcars.navigator.redis_interaction.MapSnapshotCache;
+import ncepusa.distributedcars.navigator.redis_interaction.PlanningContext;
+import ncepusa.distributedcars.navigator.redis_interaction.ReactiveRedisInteraction;
 import ncepusa.distributedcars.navigator.redis_interaction.RedisInteraction;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.geo.Point;
 import org.springframework.jms.annotation.JmsListener;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -34,27 +44,68 @@ import java.util.stream.Collectors;
 public class ActiveMQListener {
 
     private RedisInteraction redisInteraction;
+    private final ReactiveRedisInteraction reactiveRedisInteraction;
+    private final MapSnapshotCache mapSnapshotCache;
     PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
-    //private ExecutorService executor = Executors.newFixedThreadPool(20);
-    private final ExecutorService executor = Executors.newScheduledThreadPool(20);
-
-    private final PathPlanning pathPlanning = new PathPlanning();
-    private int carNumbers = 0;
-    private final List<byte[]> visitedMap;
-    private final List<byte[]> obstacleMap;
-    private Point mapSize;
-    private final List<Point> carPosition;
-    private final List<GridMap> gridMap;
-    private final List<List<Point>> path;
-
-    @Contract(pure = true)
-    public ActiveMQListener(@NotNull RedisInteraction redisInteraction) {
+    /**
+     * 平台线程模式下线程池的最大线程数
+     */
+    private static final int MAX_PLATFORM_THREADS = 20;
+    /**
+     * 执行一条消息的全部流程。虚拟线程模式下每条消息一个虚拟线程，只负责读写Redis；响应式模式下为 null
+     */
+    private final ExecutorService executor;
+    /**
+     * 虚拟线程模式下执行路径规划的线程池，线程数等于CPU核数；平台线程模式下为 null，规划直接在 {@link #executor} 的线程中执行
+     */
+    private final ExecutorService planningExecutor;
+    /**
+     * 响应式模式下同时处理的消息数上限，达到上限时监听线程等待，不再从队列中取消息；其他模式下为 null
+     */
+    private final Semaphore inFlight;
+
+    private final FrontierSearch frontierSearch = new FrontierSearch();
+    /**
+     * 是否用一次多目标搜索同时完成终点选举和路径规划，开启后不再使用Redis中指定的算法
+     */
+    @Value("${navigator.planning.single-pass:false}")
+    private boolean singlePassPlanning;
+    /**
+     * 是否按到达顺序逐条处理同一辆车的消息，多个导航器进程按消息组竞争消费时开启
+     */
+    @Value("${navigator.jms.ordered-per-car:false}")
+    private boolean orderedPerCar;
+    /**
+     * 每辆车跨请求保留的状态，每次请求的数据放在 {@link PlanningRequest} 中随请求传递
+     */
+    private final CarSlotTable carSlots = new CarSlotTable();
+
+    /**
+     * @param executionMode 执行模式，{@code platform}（默认）时消息在最多 {@value #MAX_PLATFORM_THREADS} 个平台线程中处理，
+     *                      {@code virtual} 时读写Redis在虚拟线程中执行，路径规划交给与CPU核数相同大小的线程池，
+     *                      大量小车同时请求时不会因为线程都阻塞在Redis上而排队；
+     *                      {@code reactive} 时整个流程是非阻塞的响应式链，见 {@link #processMessageReactive(String)}
+     * @param maxInFlight 响应式模式下同时处理的消息数上限
+     */
+    public ActiveMQListener(@NotNull RedisInteraction redisInteraction, @NotNull ReactiveRedisInteraction reactiveRedisInteraction,
+                            @NotNull MapSnapshotCache mapSnapshotCache,
+                            @Value("${navigator.execution.mode:platform}") @NotNull String executionMode,
+                            @Value("${navigator.reactive.max-in-flight:1024}") int maxInFlight) {
         this.redisInteraction = redisInteraction;
-        visitedMap = new ArrayList<byte[]>();
-        obstacleMap = new ArrayList<byte[]>();
-        carPosition = new ArrayList<Point>();
-        gridMap = new ArrayList<GridMap>();
-        path = new ArrayList<List<Point>>();
+        this.reactiveRedisInteraction = reactiveRedisInteraction;
+        this.mapSnapshotCache = mapSnapshotCache;
+        this.inFlight = "reactive".equalsIgnoreCase(executionMode.trim()) ? new Semaphore(Math.max(1, maxInFlight)) : null;
+        if (null != inFlight) {
+            this.executor = null;
+            this.planningExecutor = null;
+        } else if ("virtual".equalsIgnoreCase(executionMode.trim())) {
+            //规划用的开放列表、g值等按线程缓存，必须放在数量固定的平台线程中，否则每个虚拟线程都要重新分配
+            this.executor = Executors.newVirtualThreadPerTaskExecutor();
+            this.planningExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        } else {
+            this.executor = Executors.newScheduledThreadPool(MAX_PLATFORM_THREADS);
+            this.planningExecutor = null;
+        }
     }
 
     @Autowired
@@ -63,42 +114,94 @@ public class ActiveMQListener {
     }
 
     /**
-     * <p>使用独占消费者模式确保只有一个消费者进程在监听该消息，否则会出现一条消息被多个消费者同时消费的问题,但我们只希望一条消息只被处理一次</p>
-     * <p>这样当最开始获得连接的消费者进程关闭时（手动关闭或异常退出）可以有其他的消费者进程接手，保证导航器的正常运行</p>
-     * <p>但独占消费者模式目前还存在一个待优化的问题：永远都只有一个消费者进程在处理消息，其他消费者只能一直尝试连接activemq队列，从而不能贡献自己的算力</p>
-     * <p>应该在主消费者进程来不及处理其他消息时（即使是多线程在处理消息也有可能处理不过来），有其他消费者处理这些积压的消息</p>
+     * <p>监听的队列由 {@code navigator.jms.destination} 配置，默认使用独占消费者模式，只有一个消费者进程在处理消息，
+     * 它关闭时（手动关闭或异常退出）其他消费者进程接手，保证导航器的正常运行，但备用进程不能贡献算力</p>
+     * <p>去掉 {@code consumer.exclusive=true} 后多个导航器进程竞争消费同一个队列，吞吐量随进程数增加。
+     * 发送方以小车id作为 {@code JMSXGroupID} 时，同一辆车的消息总是由同一个进程按顺序接收，
+     * 再开启 {@code navigator.jms.ordered-per-car}，进程内同一辆车的消息也按到达顺序逐条处理，
+     * D* Lite的搜索树等按小车缓存的数据一直留在这个进程中</p>
      *
      * @param message 消息
      */
-    @JmsListener(destination = "UpdateNavigate?consumer.exclusive=true")
+    @JmsListener(destination = "${navigator.jms.destination:UpdateNavigate?consumer.exclusive=true}")
     public void primaryOnMessage(@NotNull String message) {
+        if (null != inFlight) {
+            //处理中的消息达到上限时阻塞监听线程，背压传回消息队列
+            inFlight.acquireUninterruptibly();
+            dispatch(message, () -> processMessageReactive(message)
+                    .doOnError(e -> registry.counter("messages.failed").increment())
+                    .toFuture())
+                    .whenComplete((unused, e) -> inFlight.release());
+            return;
+        }
+        //Redis中的数据在工作线程中一次读取，监听线程只负责分发消息
+        dispatch(message, () -> CompletableFuture.runAsync(() -> processMessage(message), executor));
+    }
+
+    /**
+     * 开启按小车排序时把任务串在同一辆车上一条消息的后面，否则立即开始
+     *
+     * @param message 消息
+     * @param task 开始处理消息并返回完成的信号
+     * @return 处理完成的信号
+     */
+    private @NotNull CompletableFuture<?> dispatch(@NotNull String message, @NotNull Supplier<CompletableFuture<?>> task) {
+        if (orderedPerCar) {
+            int carid = parseCarId(message);
+            if (carid >= 0 && carid <= CarSlotTable.MAX_CAR_ID) {
+                return carSlots.get(carid).runInOrder(task);
+            }
+        }
+        return task.get();
+    }
+
+    /**
+     * @return 消息中的小车id，格式不正确时返回-1，交给 {@link #processMessage(String)} 按失败处理
+     */
+    private static int parseCarId(@NotNull String message) {
+        try {
+            return Integer.parseInt(message.substring(4, message.length() - 1));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 根据Redis中的导航器数量调整线程池大小，虚拟线程模式下不需要调整
+     */
+    private void resizeExecutor(int naviNumber) {
         if (executor instanceof ThreadPoolExecutor threadPool) {
-            int newSize = redisInteraction.getNaviNumber();
-            newSize = Math.max(1, Math.min(newSize, 20));
+            int newSize = Math.max(1, Math.min(naviNumber, MAX_PLATFORM_THREADS));
             if (threadPool.getMaximumPoolSize() != newSize) {
-                threadPool.setCorePoolSize(newSize);
-                threadPool.setMaximumPoolSize(newSize);
+                synchronized (threadPool) {
+                    //扩大时先改最大值，缩小时先改核心值，否则会抛出IllegalArgumentException
+                    if (newSize > threadPool.getMaximumPoolSize()) {
+                        threadPool.setMaximumPoolSize(newSize);
+                        threadPool.setCorePoolSize(newSize);
+                    } else {
+                        threadPool.setCorePoolSize(newSize);
+                        threadPool.setMaximumPoolSize(newSize);
+                    }
+                }
             }
         }
-        carNumbers = redisInteraction.getCarNumbers();
-        while(carPosition.size() - 1 < carNumbers) {
-            visitedMap.add(null);
-            obstacleMap.add(null);
-            carPosition.add(null);
-            gridMap.add(null);
-            path.add(null);
-        }
-        executor.submit(() -> processMessage(message));
     }
 
+    /**
+     * 处理一条消息，无论成功与否最后都把完成计数加一，且只加一次
+     *
+     * @param message 消息
+     */
     public void processMessage(String message) {
         try {
             String carId = message.substring(4, message.length() - 1);
-            Integer.parseInt(carId);
-            readDataFromRedis(carId);
-            generatePath(carId);
-            writePathToRedis(carId);
-            path.set(Integer.parseInt(carId), null);
+            PlanningRequest request = readDataFromRedis(carId);
+            if (null == request) return;
+            List<Point> path = null == planningExecutor
+                    ? generatePath(request)
+                    : planningExecutor.submit(() -> generatePath(request)).get();
+            if (path.isEmpty()) return;
+            writePathToRedis(request, path);
         } catch (Exception e) {
             registry.counter("messages.failed").increment();
         } finally{
@@ -108,81 +211,148 @@ public class ActiveMQListener {
 
     /**
      *  <p>从Redis中读取数据</p>
-     *  <p>如果读取失败，记录失败消息并返回</p>
+     *  <p>小车数量、位置、地图尺寸等标量数据一次 {@code MGET} 读出，
+     *  地图从共享的快照缓存中获取，同一版本的地图不会重复下载</p>
+     *  <p>如果读取失败，记录失败消息并返回 null，完成计数由调用方加一</p>
+     *
+     * @param carId 小车id
+     * @return 本次请求的数据，读取失败时为 null
      */
-    public void readDataFromRedis(String carId) {
+    public @Nullable PlanningRequest readDataFromRedis(String carId) {
         int carid = Integer.parseInt(carId);
-        String carPositionCoordinate = redisInteraction.getCarPositionCoordinate(carId);
-
-        visitedMap.set(carid, redisInteraction.getVisitedMap());
-        obstacleMap.set(carid, redisInteraction.getObstacleMap());
-        mapSize = redisInteraction.getMapSize();
+        CarSlotTable.CarSlot slot = carSlots.get(carid);
+        PlanningContext planningContext = redisInteraction.getPlanningContext(carId);
+        resizeExecutor(planningContext.getNaviNumber());
+        MapSnapshot snapshot = mapSnapshotCache.getSnapshot(planningContext);
+        Point carPosition = planningContext.getCarPosition();
 
-        if(null == carPositionCoordinate || null == visitedMap.get(carid) || null == obstacleMap.get(carid) || null == mapSize){
+        if(null == carPosition || null == snapshot){
             registry.counter("messages.failed").increment();
-            redisInteraction.setNaViIdFinish();
-            return;
+            return null;
         }
-
-        if(mapSize.getX() * mapSize.getY() > visitedMap.get(carid).length * 8 ||
-                mapSize.getX() * mapSize.getY() > obstacleMap.get(carid).length * 8){
-            registry.counter("messages.failed").increment();
-            redisInteraction.setNaViIdFinish();
-            return;
-        }
-        String[] parts = carPositionCoordinate.split(",");
-        carPosition.set(carid,new Point(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+        return new PlanningRequest(carid, planningContext, snapshot, carPosition, slot.begin());
     }
 
     /**
      * <p>生成路径</p>
-     * <p>如果生成失败，说明终点对于起点来说是不可达的，则更换终点重新规划</p>
+     * <p>如果生成失败，说明终点对于起点来说是不可达的，则更换终点重新规划。
+     * 终点只在起点所在的连通分量中选举，一般不会再出现这种情况</p>
+     * <p>开启单次多目标搜索时，一次搜索就能选出可达的终点和路径，不需要重试</p>
+     * <p>不访问Redis，没有可选的终点时返回空路径，由调用方统一把完成计数加一</p>
+     *
+     * @param request 本次请求的数据
+     * @return 不含起点的路径，没有可选的终点时为空
      */
-    public void generatePath(String carId) {
-        int carid = Integer.parseInt(carId);
-        gridMap.set(carid,
-                new GridMap(visitedMap.get(carid),
-                        obstacleMap.get(carid),
-                        mapSize,
-                        carPosition.get(carid)));
-
-            pathPlanning.setStrategy(redisInteraction.getAlgorithmIndex());
+    public @NotNull List<Point> generatePath(@NotNull PlanningRequest request) {
+        int carid = request.getCarid();
+        int carNumbers = request.getCarNumbers();
+        MapSnapshot mapSnapshot = request.getSnapshot();
+        //地图只在本次请求中使用，请求结束后随之释放
+        GridMap tmpGridMap = new GridMap(mapSnapshot, request.getCarPosition());
+        tmpGridMap.setCarId(carid);
+        if (singlePassPlanning) {
+            List<Point> path = frontierSearch.electAndPlan(tmpGridMap, carNumbers, carid);
+            return tmpGridMap.getEnd() == null ? Collections.emptyList() : path;
+        }
 
-            GridMap tmpGridMap = gridMap.get(carid);
+        //每个工作线程使用自己的规划实例，算法随请求传入
+        PathPlanning pathPlanning = PathPlanning.forCurrentThread();
+        int algorithmIndex = request.getContext().getAlgorithmIndex();
+        List<Point> path = Collections.emptyList();
         int tryCount = 0;
-        while((null == path.get(carid) || path.get(carid).isEmpty()) && tryCount++ <= mapSize.getX() * mapSize.getY()) {
+        while(path.isEmpty() && tryCount++ <= mapSnapshot.getWidth() * mapSnapshot.getHeight()) {
+            //每个算法开始搜索时都会重置搜索状态，这里只需把不可达的终点排除掉
             if(tryCount != 1) {
-                tmpGridMap.setG();
                 tmpGridMap.getEnd().setArrived(false);
             }
-            tmpGridMap.setEnd(null);
-            tmpGridMap.electEndpoint(carNumbers, carid);
+            //第一次尝试时沿用算法保留的终点（D* Lite的搜索树只在终点不变时可以修复），重试时重新选举
+            pathPlanning.electEndpoint(algorithmIndex, tmpGridMap, carNumbers, carid, tryCount == 1);
             if(tmpGridMap.getEnd() == null){
-                redisInteraction.setNaViIdFinish();
-                return;
+                return Collections.emptyList();
             }
-            path.set(carid, pathPlanning.planPath(tmpGridMap, tmpGridMap.getStart(), tmpGridMap.getEnd()));
+            path = pathPlanning.planPath(algorithmIndex, tmpGridMap, tmpGridMap.getStart(), tmpGridMap.getEnd());
         }
 
-        //redisInteraction.setTimeQueue(carId, path.get(carid).size(), (pathPlanningEnd - pathPlanningStart) / 1e3);
+        //redisInteraction.setTimeQueue(carId, path.size(), (pathPlanningEnd - pathPlanningStart) / 1e3);
         //registry.timer("pathPlanning.time").record(pathPlanningEnd - pathPlanningStart, TimeUnit.NANOSECONDS);
 
         //写日志
         // 修改日志输出方式
         /*logger.info("路径结果: {}",
-                path.get(carid).stream()
+                path.stream()
                         .map(node -> String.format("(%d,%d)", (int)node.getX(), (int)node.getY()))
                         .collect(Collectors.joining(" -> ")));*/
+        return path;
     }
 
     /**
      * <p>将路径写入Redis</p>
-     * <p>如果写入失败，记录失败消息并返回</p>
+     * <p>同一辆车更新的请求已经写过路径时，本次的路径是在旧地图上规划的，不再写入</p>
+     *
+     * @param request 本次请求的数据
+     * @param path 规划出的路径
      */
-    public void writePathToRedis(String carId) {
-        int carid = Integer.parseInt(carId);
-        redisInteraction.setTaskQueue(carId, path.get(carid));
+    public void writePathToRedis(@NotNull PlanningRequest request, @NotNull List<Point> path) {
+        if (!carSlots.get(request.getCarid()).tryPublish(request.getSequence())) {
+            registry.counter("messages.superseded").increment();
+            return;
+        }
+        redisInteraction.setTaskQueue(request.getCarId(), path);
 
         //logger.info("写redis花费时间: {} ms", (redisWriteEnd - redisWriteStart) / 1e6);
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>响应式模式下处理一条消息，读取、规划、写回组成一条非阻塞的链</p>
+     * <p>读写Redis通过Lettuce异步完成，不占用线程；路径规划在 {@link Schedulers#parallel()} 中执行，
+     * 线程数等于CPU核数，规划用的线程私有缓存可以复用。地图快照可以直接复用时不访问Redis，
+     * 需要下载新版本的地图时交给 {@link Schedulers#boundedElastic()}，同一版本只下载一次</p>
+     * <p>与 {@link #processMessage(String)} 一样，无论成功与否只在链的最后把完成计数加一，
+     * 计数的写入也在链中，失败时计入失败消息</p>
+     *
+     * @param message 消息
+     * @return 处理完成的信号
+     */
+    public @NotNull Mono<Void> processMessageReactive(@NotNull String message) {
+        return Mono.fromCallable(() -> message.substring(4, message.length() - 1))
+                .flatMap(this::readDataFromRedisReactive)
+                .flatMap(request -> Mono.fromCallable(() -> generatePath(request))
+                        .subscribeOn(Schedulers.parallel())
+                        .filter(path -> !path.isEmpty())
+                        .flatMap(path -> writePathToRedisReactive(request, path)))
+                .onErrorResume(e -> {
+                    registry.counter("messages.failed").increment();
+                    return Mono.empty();
+                })
+                .then(Mono.defer(reactiveRedisInteraction::setNaViIdFinish))
+                .then();
+    }
+
+    private @NotNull Mono<PlanningRequest> readDataFromRedisReactive(@NotNull String carId) {
+        int carid = Integer.parseInt(carId);
+        CarSlotTable.CarSlot slot = carSlots.get(carid);
+        return reactiveRedisInteraction.getPlanningContext(carId)
+                .flatMap(planningContext -> {
+                    Point carPosition = planningContext.getCarPosition();
+                    if (null == carPosition) return Mono.<PlanningRequest>empty();
+                    return loadSnapshot(planningContext)
+                            .map(snapshot -> new PlanningRequest(carid, planningContext, snapshot, carPosition, slot.begin()));
+                })
+                .switchIfEmpty(Mono.fromRunnable(() -> registry.counter("messages.failed").increment()));
+    }
+
+    private @NotNull Mono<MapSnapshot> loadSnapshot(@NotNull PlanningContext planningContext) {
+        MapSnapshot cached = mapSnapshotCache.getCachedSnapshot(planningContext);
+        if (null != cached) return Mono.just(cached);
+        return Mono.fromCallable(() -> mapSnapshotCache.getSnapshot(planningContext))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private @NotNull Mono<Void> writePathToRedisReactive(@NotNull PlanningRequest request, @NotNull List<Point> path) {
+        if (!carSlots.get(request.getCarid()).tryPublish(request.getSequence())) {
+            registry.counter("messages.superseded").increment();
+            return Mono.empty();
+        }
+        return reactiveRedisInteraction.setTaskQueue(request.getCarId(), path).then();
+    }
+}
@@ -0,0 +1,113 @@
+package ncepusa.distributedcars.navigator.message_queue_interaction;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * <p>按小车id索引的无锁槽位表，保存需要跨请求保留的每辆车的状态</p>
+ * <p>两级数组：目录长度固定，每一项是 {@link #CHUNK_SIZE} 个槽位的块，块和槽位都在第一次使用时用CAS创建，
+ * 扩容时不复制已有的槽位，也就不会丢失并发写入的状态。读取已存在的槽位只有两次volatile读</p>
+ * <p>每次请求自己的数据放在 {@link PlanningRequest} 中，不放进这里</p>
+ *
+ * @author 0109
+ * @since 2025-06-09
+ */
+public final class CarSlotTable {
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int DIRECTORY_SIZE = 1 << 10;
+    /**
+     * 支持的最大小车id
+     */
+    public static final int MAX_CAR_ID = DIRECTORY_SIZE * CHUNK_SIZE - 1;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<CarSlot>> directory = new AtomicReferenceArray<>(DIRECTORY_SIZE);
+
+    /**
+     * 获取小车的槽位，不存在时创建
+     *
+     * @param carid 小车id
+     * @return 小车的槽位，同一个id总是返回同一个对象
+     * @throws IllegalArgumentException id为负数或超过 {@link #MAX_CAR_ID}
+     */
+    public @NotNull CarSlot get(int carid) {
+        if (carid < 0 || carid > MAX_CAR_ID) {
+            throw new IllegalArgumentException("car id " + carid + " is out of range [0, " + MAX_CAR_ID + "]");
+        }
+        int chunkIndex = carid >>> CHUNK_BITS;
+        AtomicReferenceArray<CarSlot> chunk = directory.get(chunkIndex);
+        if (null == chunk) {
+            directory.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = directory.get(chunkIndex);
+        }
+        int slotIndex = carid & (CHUNK_SIZE - 1);
+        CarSlot slot = chunk.get(slotIndex);
+        if (null == slot) {
+            chunk.compareAndSet(slotIndex, null, new CarSlot());
+            slot = chunk.get(slotIndex);
+        }
+        return slot;
+    }
+
+    /**
+     * <p>一辆车跨请求保留的状态</p>
+     * <p>同一辆车的多条消息可能被不同的工作线程同时处理，先到的请求可能后规划完。
+     * 每个请求开始时领取一个递增的序号，写回路径前确认没有更新的请求已经写过，
+     * 避免旧地图上规划的路径覆盖新路径</p>
+     * <p>需要按顺序处理同一辆车的消息时，用 {@link #runInOrder(Supplier)} 把任务串在这辆车上一个任务的后面</p>
+     */
+    public static final class CarSlot {
+        private final AtomicLong issued = new AtomicLong();
+        private final AtomicLong published = new AtomicLong();
+        /**
+         * 这辆车最后提交的任务完成时完成
+         */
+        private final AtomicReference<CompletableFuture<Void>> tail = new AtomicReference<>(CompletableFuture.completedFuture(null));
+
+        /**
+         * <p>这辆车之前提交的任务全部完成后再开始 task，不阻塞调用线程</p>
+         * <p>前一个任务失败不影响后面的任务，task 本身抛出异常也视为完成</p>
+         *
+         * @param task 开始任务并返回它完成的信号
+         * @return 本任务完成时完成，不会异常完成
+         */
+        public @NotNull CompletableFuture<Void> runInOrder(@NotNull Supplier<? extends CompletionStage<?>> task) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            tail.getAndSet(done).whenComplete((unused, previousError) -> {
+                try {
+                    task.get().whenComplete((result, error) -> done.complete(null));
+                } catch (RuntimeException e) {
+                    done.complete(null);
+                }
+            });
+            return done;
+        }
+
+        /**
+         * @return 本次请求的序号
+         */
+        public long begin() {
+            return issued.incrementAndGet();
+        }
+
+        /**
+         * 登记序号为 sequence 的请求将要写回路径
+         *
+         * @param sequence {@link #begin()} 返回的序号
+         * @return 没有更新的请求写过路径时返回 true，否则本次请求的路径已经过时，不应写回
+         */
+        public boolean tryPublish(long sequence) {
+            while (true) {
+                long current = published.get();
+                if (current >= sequence) return false;
+                if (published.compareAndSet(current, sequence)) return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ncepusa.distributedcars.navigator.message_queue_interaction;
+
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import ncepusa.distributedcars.navigator.redis_interaction.PlanningContext;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.data.geo.Point;
+
+/**
+ * <p>一次路径规划请求在读取、规划、写回三个阶段之间传递的数据</p>
+ * <p>读取阶段一次构造，之后不可变，每个请求一个对象，工作线程之间不共享。
+ * 请求结束后整个对象随之释放，不会在消息之间保留地图</p>
+ *
+ * @author 0109
+ * @since 2025-06-09
+ */
+public final class PlanningRequest {
+    private final int carid;
+    private final PlanningContext context;
+    private final MapSnapshot snapshot;
+    private final Point carPosition;
+    /**
+     * 这辆车的第几次请求，见 {@link CarSlotTable.CarSlot#begin()}
+     */
+    private final long sequence;
+
+    @Contract(pure = true)
+    public PlanningRequest(int carid, @NotNull PlanningContext context, @NotNull MapSnapshot snapshot,
+                           @NotNull Point carPosition, long sequence) {
+        this.carid = carid;
+        this.context = context;
+        this.snapshot = snapshot;
+        this.carPosition = carPosition;
+        this.sequence = sequence;
+    }
+
+    public int getCarid() {
+        return carid;
+    }
+
+    public @NotNull String getCarId() {
+        return context.getCarId();
+    }
+
+    public @NotNull PlanningContext getContext() {
+        return context;
+    }
+
+    public @NotNull MapSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public @NotNull Point getCarPosition() {
+        return carPosition;
+    }
+
+    public int getCarNumbers() {
+        return context.getCarNumbers();
+    }
+}
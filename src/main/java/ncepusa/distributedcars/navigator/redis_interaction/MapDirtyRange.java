@@ -0,0 +1,71 @@
+package ncepusa.distributedcars.navigator.redis_interaction;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * <p>地图变更日志中的一条记录</p>
+ * <p>写地图的一方每次修改 {@code map} 或 {@code obstacle_map} 时，把 {@code mapVersion} 加一，
+ * 并向有序集合 {@code mapDirtyRanges} 写入一条 {@code 版本号:键:字节偏移:字节长度} 格式的记录，分数为版本号。
+ * 一个版本修改了多段字节时写入多条记录</p>
+ *
+ * @author 0109
+ * @since 2025-05-22
+ */
+public final class MapDirtyRange {
+    private final long version;
+    private final String key;
+    private final int offset;
+    private final int length;
+
+    @Contract(pure = true)
+    public MapDirtyRange(long version, @NotNull String key, int offset, int length) {
+        this.version = version;
+        this.key = key;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * 解析一条变更记录
+     *
+     * @param entry {@code 版本号:键:字节偏移:字节长度}
+     * @return 变更记录，格式不正确时返回 null
+     */
+    public static @Nullable MapDirtyRange parse(@NotNull String entry) {
+        String[] parts = entry.split(":");
+        if (parts.length != 4) return null;
+        try {
+            int offset = Integer.parseInt(parts[2]);
+            int length = Integer.parseInt(parts[3]);
+            if (offset < 0 || length <= 0) return null;
+            return new MapDirtyRange(Long.parseLong(parts[0]), parts[1], offset, length);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public @NotNull String getKey() {
+        return key;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return 最后一个字节之后的偏移
+     */
+    public int getEnd() {
+        return offset + length;
+    }
+}
@@ -0,0 +1,269 @@
+package ncepusa.distributedcars.navigator.redis_interaction;
+
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.geo.Point;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>地图快照缓存</p>
+ * <p>所有小车的路径规划共享同一个 {@link MapSnapshot}，同一版本的地图只从Redis下载、解码一次</p>
+ * <p>Redis中有 {@code mapVersion} 时，版本号不变就直接复用缓存的快照；
+ * 没有版本号时无法判断地图是否变化，同时到达的请求合并为一次读取：
+ * 请求只复用在它到达之后才开始读取的快照，保证读到的地图不比请求本身旧</p>
+ * <p>版本号变化时，从变更日志 {@code mapDirtyRanges} 中取出两个版本之间被修改的字节段，
+ * 在一次管道中用 {@code GETRANGE} 读取，复制旧快照的位图后打补丁生成新快照。
+ * 版本差距太大、日志不完整或者变更的字节太多时，退回到完整读取</p>
+ *
+ * @author 0109
+ * @since 2025-05-22
+ */
+@Lazy
+@Component
+public class MapSnapshotCache {
+    /**
+     * Redis中没有地图版本号时快照的版本号
+     */
+    public static final long NO_VERSION = -1;
+
+    private final RedisInteraction redisInteraction;
+    /**
+     * 快照的最长复用时间，为0时只按版本号和合并读取复用
+     */
+    @Value("${navigator.map.snapshot-max-age-ms:0}")
+    private long maxAgeMillis;
+    /**
+     * 最多跨越多少个版本做增量更新，超过时完整读取地图
+     */
+    @Value("${navigator.map.max-incremental-gap:64}")
+    private long maxIncrementalGap;
+
+    private volatile Load latest;
+    private Load loading;
+
+    @Autowired
+    public MapSnapshotCache(RedisInteraction redisInteraction) {
+        this.redisInteraction = redisInteraction;
+    }
+
+    /**
+     * 不访问Redis，只在缓存的快照可以直接复用时返回它，供不能阻塞的调用方先行判断
+     *
+     * @param context 请求上下文，提供地图版本号
+     * @return 可以直接复用的快照，需要读取Redis时返回 null
+     */
+    public @Nullable MapSnapshot getCachedSnapshot(@NotNull PlanningContext context) {
+        long version = null == context.getMapVersion() ? NO_VERSION : context.getMapVersion();
+        return reusableSnapshot(latest, version, System.nanoTime());
+    }
+
+    private @Nullable MapSnapshot reusableSnapshot(@Nullable Load cached, long version, long arrivedAt) {
+        if (null != cached && null != cached.snapshot) {
+            if (maxAgeMillis > 0 && arrivedAt - cached.startedAt <= TimeUnit.MILLISECONDS.toNanos(maxAgeMillis)) {
+                return cached.snapshot;
+            }
+            if (version != NO_VERSION && version == cached.snapshot.getVersion()) {
+                return cached.snapshot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取不比请求上下文旧的地图快照
+     *
+     * @param context 请求上下文，提供地图版本号和尺寸
+     * @return 地图快照，Redis中的地图不完整时返回 null
+     */
+    public @Nullable MapSnapshot getSnapshot(@NotNull PlanningContext context) {
+        long arrivedAt = System.nanoTime();
+        long version = null == context.getMapVersion() ? NO_VERSION : context.getMapVersion();
+        Load cached = latest;
+        MapSnapshot reusable = reusableSnapshot(cached, version, arrivedAt);
+        if (null != reusable) {
+            return reusable;
+        }
+
+        Load load;
+        boolean owner = false;
+        synchronized (this) {
+            //正在进行或刚完成的读取开始于本请求到达之后，直接等它的结果
+            if (null != loading && loading.startedAt - arrivedAt >= 0) {
+                load = loading;
+            } else {
+                load = new Load(System.nanoTime());
+                loading = load;
+                owner = true;
+            }
+        }
+        if (owner) {
+            try {
+                load.snapshot = readSnapshot(null == cached ? null : cached.snapshot, version, context.getMapSize());
+                if (null != load.snapshot) publish(load);
+                load.result.complete(load.snapshot);
+            } catch (RuntimeException e) {
+                load.result.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return load.result.join();
+    }
+
+    /**
+     * <p>把读取完成的快照设为最新</p>
+     * <p>没有版本号时两次读取可能重叠，开始得更早的读取后完成时不能覆盖更新的快照</p>
+     */
+    private synchronized void publish(@NotNull Load load) {
+        Load current = latest;
+        if (null == current || load.startedAt - current.startedAt > 0) latest = load;
+    }
+
+    /**
+     * 读取最新的地图，能增量更新时只读取变化的字节
+     *
+     * @param previous 上一个快照，没有时为 null
+     * @param version 请求上下文中的地图版本号
+     * @param mapSize 请求上下文中的地图尺寸
+     */
+    private @Nullable MapSnapshot readSnapshot(@Nullable MapSnapshot previous, long version, @Nullable Point mapSize) {
+        if (null != previous && previous.getVersion() != NO_VERSION && version != NO_VERSION) {
+            if (version == previous.getVersion()) return previous;
+            if (version > previous.getVersion() && version - previous.getVersion() <= maxIncrementalGap) {
+                MapSnapshot patched = patchSnapshot(previous, version);
+                if (null != patched) return patched;
+            }
+        }
+        return readFullSnapshot(previous, version, mapSize);
+    }
+
+    /**
+     * <p>根据变更日志增量更新快照</p>
+     * <p>先读版本号再读字节，读到的字节只可能比版本号新，之后的版本会再次读取这些字节，不会丢失修改</p>
+     *
+     * @return 新快照，日志不完整或变更太多时返回 null
+     */
+    private @Nullable MapSnapshot patchSnapshot(@NotNull MapSnapshot previous, long version) {
+        Set<String> entries = redisInteraction.getMapDirtyRanges(previous.getVersion(), version);
+        if (null == entries) return null;
+
+        //每个版本至少有一条记录，否则说明日志已经被截断
+        BitSet coveredVersions = new BitSet();
+        List<MapDirtyRange> ranges = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            MapDirtyRange range = MapDirtyRange.parse(entry);
+            if (null == range || !RedisInteraction.isMapKey(range.getKey())) return null;
+            if (range.getVersion() <= previous.getVersion() || range.getVersion() > version) continue;
+            coveredVersions.set((int) (range.getVersion() - previous.getVersion() - 1));
+            ranges.add(range);
+        }
+        if (coveredVersions.cardinality() != version - previous.getVersion()) return null;
+
+        List<MapDirtyRange> merged = merge(ranges);
+        long dirtyBytes = 0;
+        for (MapDirtyRange range : merged) {
+            int limit = bitmapFor(previous, range.getKey()).length;
+            if (range.getEnd() > limit) return null;
+            dirtyBytes += range.getLength();
+        }
+        //变更的字节超过地图的一半时，完整读取更划算
+        if (dirtyBytes * 2 > previous.getVisitedMap().length + previous.getObstacleMap().length) return null;
+
+        List<Object> values = merged.isEmpty() ? List.of() : redisInteraction.getMapRanges(merged);
+        if (values.size() != merged.size()) return null;
+
+        //写时复制，只复制被修改的位图
+        byte[] visitedMap = previous.getVisitedMap();
+        byte[] obstacleMap = previous.getObstacleMap();
+        for (int i = 0; i < merged.size(); i++) {
+            MapDirtyRange range = merged.get(i);
+            if (!(values.get(i) instanceof byte[] bytes) || bytes.length != range.getLength()) return null;
+            if (RedisInteraction.isObstacleMapKey(range.getKey())) {
+                if (obstacleMap == previous.getObstacleMap()) obstacleMap = obstacleMap.clone();
+                System.arraycopy(bytes, 0, obstacleMap, range.getOffset(), bytes.length);
+            } else {
+                if (visitedMap == previous.getVisitedMap()) visitedMap = visitedMap.clone();
+                System.arraycopy(bytes, 0, visitedMap, range.getOffset(), bytes.length);
+            }
+        }
+        return previous.next(version, visitedMap, obstacleMap);
+    }
+
+    /**
+     * 合并同一个位图上重叠或相邻的字节段，减少 {@code GETRANGE} 的次数
+     */
+    private static @NotNull List<MapDirtyRange> merge(@NotNull List<MapDirtyRange> ranges) {
+        ranges.sort(Comparator.comparing(MapDirtyRange::getKey).thenComparingInt(MapDirtyRange::getOffset));
+        List<MapDirtyRange> merged = new ArrayList<>();
+        MapDirtyRange current = null;
+        for (MapDirtyRange range : ranges) {
+            if (null != current && current.getKey().equals(range.getKey()) && range.getOffset() <= current.getEnd()) {
+                int end = Math.max(current.getEnd(), range.getEnd());
+                current = new MapDirtyRange(range.getVersion(), current.getKey(), current.getOffset(), end - current.getOffset());
+            } else {
+                if (null != current) merged.add(current);
+                current = range;
+            }
+        }
+        if (null != current) merged.add(current);
+        return merged;
+    }
+
+    private static @NotNull byte[] bitmapFor(@NotNull MapSnapshot snapshot, @NotNull String key) {
+        return RedisInteraction.isObstacleMapKey(key) ? snapshot.getObstacleMap() : snapshot.getVisitedMap();
+    }
+
+    /**
+     * <p>从Redis读取完整的地图，版本号和尺寸在读地图之前已经读出，保证快照的内容不比版本号旧</p>
+     * <p>尺寸和障碍物位图都与上一个快照相同时，在上一个快照的基础上生成新快照，
+     * 沿用连通分量、跳跃距离表、地标距离表等由障碍物派生的数据，没有版本号时也不必每次重建</p>
+     *
+     * @param previous 上一个快照，没有时为 null
+     */
+    private @Nullable MapSnapshot readFullSnapshot(@Nullable MapSnapshot previous, long version, @Nullable Point mapSize) {
+        if (null == mapSize) return null;
+        byte[][] bitmaps = redisInteraction.getMapBitmaps();
+        byte[] visitedMap = bitmaps[0];
+        byte[] obstacleMap = bitmaps[1];
+        if (null == visitedMap || null == obstacleMap) return null;
+
+        int width = (int) mapSize.getX();
+        int height = (int) mapSize.getY();
+        if (!fits(visitedMap, width, height) || !fits(obstacleMap, width, height)) return null;
+        if (null != previous && previous.getWidth() == width && previous.getHeight() == height
+                && Arrays.equals(previous.getObstacleMap(), obstacleMap)) {
+            if (Arrays.equals(previous.getVisitedMap(), visitedMap)) visitedMap = previous.getVisitedMap();
+            return previous.next(version, visitedMap, previous.getObstacleMap());
+        }
+        return new MapSnapshot(version, width, height, visitedMap, obstacleMap);
+    }
+
+    private static boolean fits(@NotNull byte[] bitmap, int width, int height) {
+        return (long) width * height <= (long) bitmap.length * 8;
+    }
+
+    /**
+     * 一次从Redis读取快照的过程
+     */
+    private static final class Load {
+        private final long startedAt;
+        private final CompletableFuture<MapSnapshot> result = new CompletableFuture<>();
+        private MapSnapshot snapshot;
+
+        private Load(long startedAt) {
+            this.startedAt = startedAt;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ncepusa.distributedcars.navigator.redis_interaction;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.data.geo.Point;
+
+/**
+ * <p>一次路径规划请求需要的Redis数据</p>
+ * <p>由 {@link RedisInteraction#getPlanningContext(String)} 一次读取，不可变</p>
+ *
+ * @author 0109
+ * @since 2025-05-22
+ */
+public final class PlanningContext {
+    private final String carId;
+    private final int carNumbers;
+    private final int naviNumber;
+    private final Point carPosition;
+    private final Point mapSize;
+    private final int algorithmIndex;
+    private final Long mapVersion;
+
+    @Contract(pure = true)
+    public PlanningContext(@NotNull String carId, int carNumbers, int naviNumber, @Nullable Point carPosition,
+                           @Nullable Point mapSize, int algorithmIndex, @Nullable Long mapVersion) {
+        this.carId = carId;
+        this.carNumbers = carNumbers;
+        this.naviNumber = naviNumber;
+        this.carPosition = carPosition;
+        this.mapSize = mapSize;
+        this.algorithmIndex = algorithmIndex;
+        this.mapVersion = mapVersion;
+    }
+
+    public @NotNull String getCarId() {
+        return carId;
+    }
+
+    public int getCarNumbers() {
+        return carNumbers;
+    }
+
+    public int getNaviNumber() {
+        return naviNumber;
+    }
+
+    /**
+     * @return 小车当前位置，Redis中没有时为 null
+     */
+    public @Nullable Point getCarPosition() {
+        return carPosition;
+    }
+
+    /**
+     * @return 地图的宽和高，Redis中没有时为 null
+     */
+    public @Nullable Point getMapSize() {
+        return mapSize;
+    }
+
+    public int getAlgorithmIndex() {
+        return algorithmIndex;
+    }
+
+    /**
+     * @return 地图版本号，Redis中没有时为 null
+     */
+    public @Nullable Long getMapVersion() {
+        return mapVersion;
+    }
+}
@@ -0,0 +1,65 @@
+package ncepusa.distributedcars.navigator.redis_interaction;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * <p>非阻塞的Redis交互类</p>
+ * <p>与 {@link RedisInteraction} 读写相同的键、使用相同的格式，但所有操作都返回 {@link Mono}，
+ * 命令通过Lettuce的事件循环异步发送，等待Redis响应时不占用线程</p>
+ * <p>只包含一次路径规划请求的读取和写回，地图快照仍由 {@link MapSnapshotCache} 读取</p>
+ *
+ * @author 0109
+ * @since 2025-06-10
+ */
+@Lazy
+@Component
+public class ReactiveRedisInteraction {
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    @Autowired
+    public ReactiveRedisInteraction(ReactiveStringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 用一次 {@code MGET} 读取一次路径规划需要的全部标量数据，见 {@link RedisInteraction#getPlanningContext(String)}
+     *
+     * @param carId 小车id
+     * @return 路径规划上下文
+     */
+    public @NotNull Mono<PlanningContext> getPlanningContext(@NotNull String carId) {
+        return redisTemplate.opsForValue().multiGet(RedisInteraction.planningContextKeys(carId))
+                .flatMap(values -> {
+                    PlanningContext context = RedisInteraction.parsePlanningContext(carId, values);
+                    return null == values.get(1) ? setNaViIdFinish().thenReturn(context) : Mono.just(context);
+                });
+    }
+
+    /**
+     * 把路径追加到小车的路径队列
+     *
+     * @param carId 小车id
+     * @param path 不为空的路径
+     * @return 追加后队列的长度
+     */
+    public @NotNull Mono<Long> setTaskQueue(@NotNull String carId, @NotNull List<Point> path) {
+        return redisTemplate.opsForList().rightPushAll(RedisInteraction.taskQueueKey(carId), RedisInteraction.encodePath(path));
+    }
+
+    /**
+     * 已完成导航的计数加一
+     *
+     * @return 加一后的计数
+     */
+    public @NotNull Mono<Long> setNaViIdFinish() {
+        return redisTemplate.opsForValue().increment(RedisInteraction.IS_NAVI_FINISH_KEY);
+    }
+}
@@ -6,13 +6,14 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.data.geo.Point;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 
 /**
  * <p>Redis交互类</p>
@@ -30,33 +31,149 @@ public class RedisInteraction {
 
     private static final String VISITED_MAP_KEY = "map";
     private static final String OBSTACLE_MAP_KEY = "obstacle_map";
+    private static final String MAP_VERSION_KEY = "mapVersion";
+    private static final String MAP_DIRTY_RANGES_KEY = "mapDirtyRanges";
     private static final String CAR_NUMBER_KEY = "CarNumber";
     private static final String MAP_LENGTH_KEY = "mapLength";
     private static final String MAP_WIDTH_KEY = "mapWidth";
     private static final String NAVIGATOR_NUMBER_KEY = "NaviNumber";
     private static final String ALGORITHM_KEY = "algorithm";
-    private static final String IS_NAVI_FINISH_KEY = "IsNaviFinish";
+    static final String IS_NAVI_FINISH_KEY = "IsNaviFinish";
     private static final String IS_NAVI_OPEN_KEY = "IsNaviOpen";
-    private final String IS_NAVI_OPEN_LOCK_KEY = "IsNaviOpenLock";
-    private final String IS_NAVI_FINISH_LOCK_KEY = "IsNaviFinishLock";
+    /**
+     * 把计数器加上 ARGV[1]，结果小于0时置为0，返回修改后的值
+     */
+    private static final DefaultRedisScript<Long> ADD_CLAMPED_SCRIPT = new DefaultRedisScript<>(
+            "local count = tonumber(redis.call('GET', KEYS[1]) or '0') + tonumber(ARGV[1]) " +
+            "if count < 0 then count = 0 end " +
+            "redis.call('SET', KEYS[1], count) " +
+            "return count", Long.class);
 
     @Autowired
     public RedisInteraction(RedisTemplate<String, String> redisTemplate) {
         this.redisTemplate = redisTemplate;
     }
 
-    public byte[] getVisitedMap() {
+    /**
+     * <p>用一次 {@code MGET} 读取一次路径规划需要的全部标量数据</p>
+     * <p>地图位图由 {@link MapSnapshotCache} 按版本号读取，不在这里读取</p>
+     *
+     * @param carId 小车id
+     * @return 路径规划上下文
+     */
+    public @NotNull PlanningContext getPlanningContext(@NotNull String carId) {
         assert redisTemplate != null;
-        return redisTemplate.execute((RedisCallback<byte[]>) connection -> {
-            return connection.stringCommands().get(VISITED_MAP_KEY.getBytes());
-        });
+        List<String> values = redisTemplate.opsForValue().multiGet(planningContextKeys(carId));
+        Objects.requireNonNull(values);
+        if (null == values.get(1)) setNaViIdFinish();
+        return parsePlanningContext(carId, values);
+    }
+
+    /**
+     * @param carId 小车id
+     * @return 路径规划上下文在Redis中的键，顺序与 {@link #parsePlanningContext(String, List)} 一致
+     */
+    static @NotNull List<String> planningContextKeys(@NotNull String carId) {
+        return List.of(CAR_NUMBER_KEY, NAVIGATOR_NUMBER_KEY, "Car" + carId,
+                MAP_WIDTH_KEY, MAP_LENGTH_KEY, ALGORITHM_KEY, MAP_VERSION_KEY);
+    }
+
+    /**
+     * 解析 {@link #planningContextKeys(String)} 对应的值，第二个值（导航器数量）为 null 时调用方需要把完成计数加一
+     *
+     * @param carId 小车id
+     * @param values {@code MGET} 的结果
+     * @return 路径规划上下文
+     */
+    static @NotNull PlanningContext parsePlanningContext(@NotNull String carId, @NotNull List<String> values) {
+        int carNumbers = Integer.parseInt(Objects.requireNonNull(values.get(0)));
+        String naviNumber = values.get(1);
+
+        Point carPosition = null;
+        if (values.get(2) != null) {
+            String[] parts = values.get(2).split(",");
+            carPosition = new Point(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        }
+        Point mapSize = values.get(3) == null || values.get(4) == null ? null :
+                new Point(Integer.parseInt(values.get(3)), Integer.parseInt(values.get(4)));
+        String algorithm = values.get(5);
+        String mapVersion = values.get(6);
+
+        return new PlanningContext(carId, carNumbers,
+                naviNumber == null ? 20 : Integer.parseInt(naviNumber),
+                carPosition, mapSize,
+                algorithm == null ? 0 : Integer.parseInt(algorithm),
+                mapVersion == null ? null : Long.parseLong(mapVersion));
     }
 
-    public byte[] getObstacleMap() {
+    /**
+     * @param carId 小车id
+     * @return 小车路径队列的键
+     */
+    static @NotNull String taskQueueKey(@NotNull String carId) {
+        return "Car" + carId + "TaskList";
+    }
+
+    /**
+     * @param path 路径
+     * @return 路径中每个点写入Redis的格式
+     */
+    static @NotNull String[] encodePath(@NotNull List<Point> path) {
+        return path.stream()
+                .map(node -> (int)node.getX() + "," + (int)node.getY())
+                .toArray(String[]::new);
+    }
+
+    /**
+     * 在一次管道中读取已探索位图和障碍物位图
+     *
+     * @return {已探索位图, 障碍物位图}，不存在的位图为 null
+     */
+    public @NotNull byte[][] getMapBitmaps() {
         assert redisTemplate != null;
-        return redisTemplate.execute((RedisCallback<byte[]>) connection -> {
-            return connection.stringCommands().get(OBSTACLE_MAP_KEY.getBytes());
-        });
+        List<Object> values = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().get(VISITED_MAP_KEY.getBytes());
+            connection.stringCommands().get(OBSTACLE_MAP_KEY.getBytes());
+            return null;
+        }, RedisSerializer.byteArray());
+        return new byte[][]{(byte[]) values.get(0), (byte[]) values.get(1)};
+    }
+
+    /**
+     * <p>获取两个版本之间的地图变更日志</p>
+     * <p>写地图的一方每次修改 {@code map} 或 {@code obstacle_map} 后把 {@code mapVersion} 加一，并写入变更日志</p>
+     *
+     * @param fromVersion 起始版本（不包含）
+     * @param toVersion 结束版本（包含）
+     * @return 变更记录，格式见 {@link MapDirtyRange}
+     */
+    public Set<String> getMapDirtyRanges(long fromVersion, long toVersion) {
+        assert redisTemplate != null;
+        return redisTemplate.opsForZSet().rangeByScore(MAP_DIRTY_RANGES_KEY, fromVersion + 1, toVersion);
+    }
+
+    /**
+     * 在一次管道中读取地图位图的多段字节
+     *
+     * @param ranges 要读取的字节段，{@link MapDirtyRange#getKey()} 必须是 {@code map} 或 {@code obstacle_map}
+     * @return 与 {@code ranges} 一一对应的字节，超出位图长度的部分不会返回
+     */
+    public List<Object> getMapRanges(@NotNull List<MapDirtyRange> ranges) {
+        assert redisTemplate != null;
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (MapDirtyRange range : ranges) {
+                connection.stringCommands().getRange(range.getKey().getBytes(), range.getOffset(), range.getEnd() - 1L);
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+    }
+
+    public static boolean isMapKey(String key) {
+        return VISITED_MAP_KEY.equals(key) || OBSTACLE_MAP_KEY.equals(key);
+    }
+
+    public static boolean isObstacleMapKey(String key) {
+        return OBSTACLE_MAP_KEY.equals(key);
     }
 
     public String getCarPositionCoordinate(String carId) {
@@ -89,9 +206,7 @@ public class RedisInteraction {
 
     public void setTaskQueue(String carId, @NotNull List<Point> gridNodes) {
         assert redisTemplate != null;
-        redisTemplate.opsForList().rightPushAll("Car" + carId + "TaskList", gridNodes.stream()
-                .map(node -> (int)node.getX() + "," + (int)node.getY())
-                .toArray(String[]::new));
+        redisTemplate.opsForList().rightPushAll(taskQueueKey(carId), encodePath(gridNodes));
     }
 
     /**
@@ -105,75 +220,21 @@ public class RedisInteraction {
         redisTemplate.opsForList().rightPushAll("Car" + carId + "TimeList", counts + "," + times);
     }
 
+    /**
+     * 已完成导航的计数加一，{@code INCR} 是原子的，不需要加锁
+     */
     public void setNaViIdFinish() {
-        String lockValue = UUID.randomUUID().toString();
-        long expireTime = 10000; // 延长锁过期时间到10秒
-
-        while (!acquireLock(IS_NAVI_FINISH_LOCK_KEY, lockValue, expireTime)) {
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }
-        try {
-            String currentValue = redisTemplate.opsForValue().get(IS_NAVI_FINISH_KEY);
-            int count = currentValue == null? 0 : Integer.parseInt(currentValue);
-            redisTemplate.opsForValue().set(IS_NAVI_FINISH_KEY, String.valueOf(count + 1));
-        } finally {
-            String currentLock = redisTemplate.opsForValue().get(IS_NAVI_FINISH_LOCK_KEY);
-            if (lockValue.equals(currentLock)) {
-                releaseLock(IS_NAVI_FINISH_LOCK_KEY);
-            }
-        }
+        assert redisTemplate != null;
+        redisTemplate.opsForValue().increment(IS_NAVI_FINISH_KEY);
     }
     /**
      * 设置导航器数量
-     * 加锁后，获取当前导航器数量，修改值，然后释放锁
-     * 加锁是为了避免多个进程或线程同时获取了导航器的数量然后修改，导致导航器数量不正确
+     * 在Redis服务端用Lua脚本一次完成读取、修改和写入，结果不小于0
+     * 脚本执行是原子的，多个进程或线程同时修改也不会导致导航器数量不正确，不需要加锁
      */
     public void setIsNaviOpen(int fix)
     {
-        String lockValue = UUID.randomUUID().toString();
-        long expireTime = 10000;
-        while (!acquireLock(IS_NAVI_OPEN_LOCK_KEY, lockValue, expireTime)) {
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }
-        try {
-            String currentValue = redisTemplate.opsForValue().get(IS_NAVI_OPEN_KEY);
-            int count = currentValue == null ? 0 : Integer.parseInt(currentValue);
-            count = Math.max(0, count + fix);
-            redisTemplate.opsForValue().set(IS_NAVI_OPEN_KEY, String.valueOf(count));
-        } finally {
-            if (lockValue.equals(redisTemplate.opsForValue().get(IS_NAVI_OPEN_LOCK_KEY))) {
-                releaseLock(IS_NAVI_OPEN_LOCK_KEY);
-            }
-        }
-    }
-    /**
-     * 获取参数key的锁
-     * 该锁属于redis上的分布式锁
-     * 避免多进程的竞争资源问题
-     *
-     * @param key 锁的键
-     * @param value 锁的随机值
-     * @param expireTime 锁的过期时间
-     * @return 是否获取到锁
-     */
-    public boolean acquireLock(String key, String value, long expireTime) {
-        Boolean result = redisTemplate.opsForValue().setIfAbsent(key, value, expireTime, TimeUnit.MILLISECONDS);
-        return Boolean.TRUE.equals(result);
-    }
-
-    /**
-     * 释放参数key的锁
-     * @param key 锁的键
-     */
-    public void releaseLock(String key) {
-        redisTemplate.delete(key);
+        assert redisTemplate != null;
+        redisTemplate.execute(ADD_CLAMPED_SCRIPT, List.of(IS_NAVI_OPEN_KEY), String.valueOf(fix));
     }
 }
\ No newline at end of file
@@ -0,0 +1,122 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.geo.Point;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>D* Lite修复搜索树后的路径与从头搜索的最短路径比较</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class DStarLiteTest {
+    @Test
+    void repairedPathsMatchFreshSearch() {
+        long fallbacks = DStarLite.getRepairFallbacks();
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            MapSnapshot snapshot = TestMaps.randomSnapshot(random, 20 + random.nextInt(60), 20 + random.nextInt(60),
+                    0.1 + random.nextDouble() * 0.2);
+            int width = snapshot.getWidth();
+            int start = TestMaps.randomFreeCell(random, snapshot);
+            int end = TestMaps.randomFreeCell(random, snapshot);
+            DStarLite dStarLite = new DStarLite();
+            for (int message = 0; message < 30 && start != end; message++) {
+                GridMap map = TestMaps.gridMap(snapshot, start, end);
+                map.setCarId(1000 + seed);
+                List<Point> path = dStarLite.planPath(map, map.getStart(), map.getEnd());
+                GridMap fresh = TestMaps.gridMap(snapshot, start, end);
+                List<Point> expected = new Dijkstra().planPath(fresh, fresh.getStart(), fresh.getEnd());
+
+                String where = "seed " + seed + " message " + message;
+                assertEquals(expected.isEmpty(), path.isEmpty(), where);
+                if (path.isEmpty()) break;
+                assertEquals(new Point(end % width, end / width), path.get(path.size() - 1), where);
+                assertEquals(TestMaps.pathCost(snapshot, start, expected), TestMaps.pathCost(snapshot, start, path), 1e-6, where);
+
+                //小车沿路径走几步，再揭开一些障碍物，其中一部分落在剩下的路径上
+                Point moved = path.get(Math.min(3, path.size()) - 1);
+                start = (int) moved.getY() * width + (int) moved.getX();
+                byte[] obstacles = snapshot.getObstacleMap().clone();
+                int changes = random.nextInt(12);
+                for (int i = 0; i < changes; i++) {
+                    Point cell = path.get(random.nextInt(path.size()));
+                    int index = random.nextBoolean() ? (int) cell.getY() * width + (int) cell.getX()
+                            : random.nextInt(width * snapshot.getHeight());
+                    if (index == start || index == end) continue;
+                    obstacles[index / 8] ^= (byte) (1 << (7 - index % 8));
+                }
+                snapshot = snapshot.next(snapshot.getVersion() + 1, snapshot.getVisitedMap(),
+                        changes == 0 ? snapshot.getObstacleMap() : obstacles);
+            }
+        }
+        assertTrue(DStarLite.getRepairFallbacks() == fallbacks, "repair fell back to a fresh search");
+    }
+
+    /**
+     * 终点每条消息都重新选举，沿用上一次终点的消息必须修复搜索树，而不是从头搜索
+     */
+    @Test
+    void retainedGoalIsRepairedAcrossMessages() {
+        long fallbacks = DStarLite.getRepairFallbacks();
+        int retained = 0;
+        int reelectedElsewhere = 0;
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            MapSnapshot snapshot = TestMaps.randomSnapshot(random, 30 + random.nextInt(40), 30 + random.nextInt(40),
+                    0.1 + random.nextDouble() * 0.15, 0.7);
+            int width = snapshot.getWidth();
+            int start = TestMaps.randomFreeCell(random, snapshot);
+            PathPlanning pathPlanning = new PathPlanning();
+            int previousEnd = GridMap.NO_PARENT;
+            for (int message = 0; message < 30; message++) {
+                GridMap map = new GridMap(snapshot, new Point(start % width, start / width));
+                map.setCarId(2000 + seed);
+                pathPlanning.electEndpoint(7, map, 1, 1, true);
+                if (null == map.getEnd()) break;
+                int end = map.getEnd().getIndex();
+                GridMap elected = new GridMap(snapshot, new Point(start % width, start / width));
+                elected.electEndpoint(1, 1);
+                if (end == previousEnd && elected.getEnd().getIndex() != end) reelectedElsewhere++;
+
+                long freshSearches = DStarLite.getFreshSearches();
+                List<Point> path = pathPlanning.planPath(7, map, map.getStart(), map.getEnd());
+                String where = "seed " + seed + " message " + message;
+                if (end == previousEnd) {
+                    retained++;
+                    assertEquals(freshSearches, DStarLite.getFreshSearches(), where);
+                }
+                GridMap fresh = TestMaps.gridMap(snapshot, start, end);
+                List<Point> expected = new Dijkstra().planPath(fresh, fresh.getStart(), fresh.getEnd());
+                assertEquals(expected.isEmpty(), path.isEmpty(), where);
+                if (path.isEmpty()) break;
+                assertEquals(TestMaps.pathCost(snapshot, start, expected), TestMaps.pathCost(snapshot, start, path), 1e-6, where);
+                previousEnd = end;
+
+                //小车走一步并探索脚下的格子，再揭开几个障碍物
+                Point moved = path.get(0);
+                start = (int) moved.getY() * width + (int) moved.getX();
+                byte[] visited = snapshot.getVisitedMap().clone();
+                visited[start / 8] |= (byte) (1 << (7 - start % 8));
+                byte[] obstacles = snapshot.getObstacleMap().clone();
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    int index = random.nextInt(width * snapshot.getHeight());
+                    if (index == start || index == end) continue;
+                    obstacles[index / 8] ^= (byte) (1 << (7 - index % 8));
+                }
+                snapshot = snapshot.next(snapshot.getVersion() + 1, visited, obstacles);
+            }
+        }
+        assertTrue(retained > 100, "goal was rarely retained: " + retained);
+        assertTrue(reelectedElsewhere > 0, "a plain election never moved the goal");
+        assertTrue(DStarLite.getRepairFallbacks() == fallbacks, "repair fell back to a fresh search");
+    }
+}
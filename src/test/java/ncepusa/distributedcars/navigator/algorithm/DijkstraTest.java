@@ -0,0 +1,120 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.geo.Point;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>基数堆上的 {@link Dijkstra}、按格子下标排队的 {@link BFS}、二叉堆上的 {@link AStar}（有无地标距离表）
+ * 和 {@link BidirectionalAStar} 与 {@link TestMaps#shortestDistances} 的参考实现比较路径代价</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class DijkstraTest {
+    private static final double SQRT2 = Math.sqrt(2);
+
+    @Test
+    void dijkstraPathsAreShortest() {
+        forEachQuery(21, (snapshot, start, end) -> {
+            GridMap map = TestMaps.gridMap(snapshot, start, end);
+            List<Point> path = new Dijkstra().planPath(map, map.getStart(), map.getEnd());
+            return check(snapshot, start, end, path, SQRT2, 0);
+        });
+    }
+
+    @Test
+    void bfsPathsHaveFewestSteps() {
+        forEachQuery(22, (snapshot, start, end) -> {
+            GridMap map = TestMaps.gridMap(snapshot, start, end);
+            List<Point> path = new BFS().planPath(map, map.getStart(), map.getEnd());
+            return check(snapshot, start, end, path, 1, 0);
+        });
+    }
+
+    @Test
+    void aStarPathsAreShortestWithVisitedPenalty() {
+        forEachQuery(23, (snapshot, start, end) -> {
+            GridMap map = TestMaps.gridMap(snapshot, start, end);
+            List<Point> path = new AStar().planPath(map, map.getStart(), map.getEnd());
+            return check(snapshot, start, end, path, SQRT2, 2);
+        });
+    }
+
+    /**
+     * 地标距离表构建完成后A*取对角距离和ALT下界中较大的一个，加上已探索格子的惩罚后仍然必须是可采纳的
+     */
+    @Test
+    void aStarPathsAreShortestWithLandmarks() {
+        forEachQuery(25, (snapshot, start, end) -> {
+            GridMap map = TestMaps.gridMap(snapshot, start, end);
+            awaitLandmarks(map);
+            List<Point> path = new AStar().planPath(map, map.getStart(), map.getEnd());
+            return check(snapshot, start, end, path, SQRT2, 2);
+        });
+    }
+
+    @Test
+    void bidirectionalAStarPathsAreShortestWithVisitedPenalty() {
+        //同一个实例连续查询，邻居缓冲区在查询之间复用
+        BidirectionalAStar bidirectionalAStar = new BidirectionalAStar();
+        forEachQuery(24, (snapshot, start, end) -> {
+            GridMap map = TestMaps.gridMap(snapshot, start, end);
+            List<Point> path = bidirectionalAStar.planPath(map, map.getStart(), map.getEnd());
+            return check(snapshot, start, end, path, SQRT2, 2);
+        });
+    }
+
+    /**
+     * 等后台线程构建完地图的地标距离表
+     */
+    private static void awaitLandmarks(GridMap map) {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (null == map.getLandmarksIfReady()) {
+            assertTrue(System.nanoTime() < deadline, "landmark table was not built");
+            Thread.onSpinWait();
+        }
+    }
+
+    private interface Query {
+        String run(MapSnapshot snapshot, int start, int end);
+    }
+
+    /**
+     * 在一组随机地图上做随机查询，地图有障碍物也有已探索格子
+     */
+    private static void forEachQuery(long seed, Query query) {
+        Random random = new Random(seed);
+        for (int round = 0; round < 12; round++) {
+            MapSnapshot snapshot = TestMaps.randomSnapshot(random, 10 + random.nextInt(70), 10 + random.nextInt(70),
+                    random.nextDouble() * 0.35, random.nextDouble() * 0.5);
+            for (int i = 0; i < 40; i++) {
+                int start = TestMaps.randomFreeCell(random, snapshot);
+                int end = TestMaps.randomFreeCell(random, snapshot);
+                if (start == end) continue;
+                String failure = query.run(snapshot, start, end);
+                assertTrue(null == failure, "seed " + seed + " round " + round + " query " + i + ": " + failure);
+            }
+        }
+    }
+
+    private static String check(MapSnapshot snapshot, int start, int end, List<Point> path, double diagonalCost,
+                                double visitedPenalty) {
+        double expected = TestMaps.shortestDistances(snapshot, start, diagonalCost, visitedPenalty)[end];
+        if (expected == Double.POSITIVE_INFINITY) {
+            return path.isEmpty() ? null : "found a path to an unreachable cell";
+        }
+        if (path.isEmpty()) return "no path, expected cost " + expected;
+        int width = snapshot.getWidth();
+        assertEquals(new Point(end % width, end / width), path.get(path.size() - 1));
+        double actual = TestMaps.pathCost(snapshot, start, path, diagonalCost, visitedPenalty);
+        return Math.abs(actual - expected) < 1e-6 ? null : "cost " + actual + ", expected " + expected;
+    }
+}
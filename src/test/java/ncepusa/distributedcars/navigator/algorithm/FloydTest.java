@@ -0,0 +1,66 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.AllPairsTable;
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.geo.Point;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>分块Floyd-Warshall的路径与 {@link Dijkstra} 和参考实现比较</p>
+ * <p>地图上有已探索格子，小地图查表、大地图改用Dijkstra，两种情况的代价都必须是不含额外代价的最短距离</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class FloydTest {
+    @Test
+    void tablePathsMatchDijkstra() {
+        Random random = new Random(20);
+        //计算量是格子数的三次方，地图取到约900个格子，仍然跨过多个64x64的块
+        for (int round = 0; round < 10; round++) {
+            int width = 5 + random.nextInt(26);
+            int height = 5 + random.nextInt(26);
+            assertTrue(AllPairsTable.supports(width, height));
+            checkAgainstDijkstra(random, TestMaps.randomSnapshot(random, width, height,
+                    random.nextDouble() * 0.35, random.nextDouble() * 0.5), "round " + round);
+        }
+    }
+
+    @Test
+    void fallbackUsesTheSameCosts() {
+        Random random = new Random(21);
+        MapSnapshot snapshot = TestMaps.randomSnapshot(random, 70, 60, 0.2, 0.5);
+        assertTrue(!AllPairsTable.supports(snapshot.getWidth(), snapshot.getHeight()));
+        checkAgainstDijkstra(random, snapshot, "fallback");
+    }
+
+    private static void checkAgainstDijkstra(Random random, MapSnapshot snapshot, String where) {
+        int width = snapshot.getWidth();
+        for (int i = 0; i < 60; i++) {
+            int start = TestMaps.randomFreeCell(random, snapshot);
+            int end = TestMaps.randomFreeCell(random, snapshot);
+            if (start == end) continue;
+            GridMap floydMap = TestMaps.gridMap(snapshot, start, end);
+            List<Point> path = new Floyd().planPath(floydMap, floydMap.getStart(), floydMap.getEnd());
+            GridMap dijkstraMap = TestMaps.gridMap(snapshot, start, end);
+            List<Point> expected = new Dijkstra().planPath(dijkstraMap, dijkstraMap.getStart(), dijkstraMap.getEnd());
+            double shortest = TestMaps.shortestDistances(snapshot, start, Math.sqrt(2), 0)[end];
+
+            String query = where + " query " + i;
+            assertEquals(shortest == Double.POSITIVE_INFINITY, path.isEmpty(), query);
+            assertEquals(expected.isEmpty(), path.isEmpty(), query);
+            if (path.isEmpty()) continue;
+            assertEquals(new Point(end % width, end / width), path.get(path.size() - 1), query);
+            double cost = TestMaps.pathCost(snapshot, start, path);
+            assertEquals(shortest, cost, 1e-4, query);
+            assertEquals(TestMaps.pathCost(snapshot, start, expected), cost, 1e-4, query);
+        }
+    }
+}
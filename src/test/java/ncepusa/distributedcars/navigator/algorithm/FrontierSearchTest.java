@@ -0,0 +1,96 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.geo.Point;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>单次多目标搜索与 {@link GridMap#electEndpoint(int, int)} 选出的终点比较</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class FrontierSearchTest {
+    private static final double SQRT2 = Math.sqrt(2);
+
+    @Test
+    void electsTheSameReachableEndpoint() {
+        int pocketsWon = 0;
+        for (int seed = 0; seed < 40; seed++) {
+            Random random = new Random(seed);
+            int width = 20 + random.nextInt(50);
+            int height = 20 + random.nextInt(50);
+            byte[] obstacles = new byte[(width * height + 7) / 8];
+            byte[] visited = new byte[obstacles.length];
+            for (int i = 0; i < width * height; i++) {
+                if (random.nextDouble() < 0.12) set(obstacles, i);
+                if (random.nextDouble() < 0.85) set(visited, i);
+            }
+            //用障碍物围起几块完全没有探索过的区域，里面的格子得分最高但不可达
+            boolean[] pocket = new boolean[width * height];
+            for (int k = 0; k < 3; k++) {
+                int x0 = random.nextInt(width - 6);
+                int y0 = random.nextInt(height - 6);
+                int side = 4 + random.nextInt(3);
+                for (int y = y0; y <= y0 + side && y < height; y++) {
+                    for (int x = x0; x <= x0 + side && x < width; x++) {
+                        int index = y * width + x;
+                        boolean wall = x == x0 || y == y0 || x == x0 + side || y == y0 + side;
+                        if (wall) {
+                            set(obstacles, index);
+                        } else {
+                            clear(obstacles, index);
+                            clear(visited, index);
+                            pocket[index] = true;
+                        }
+                    }
+                }
+            }
+            MapSnapshot snapshot = new MapSnapshot(1, width, height, visited, obstacles);
+            int carNumbers = 1 + random.nextInt(4);
+            int carid = 1 + random.nextInt(carNumbers);
+            int start;
+            do {
+                start = TestMaps.randomFreeCell(random, snapshot);
+            } while (pocket[start]);
+
+            GridMap elected = new GridMap(snapshot, new Point(start % width, start / width));
+            elected.electEndpoint(carNumbers, carid);
+            GridMap searched = new GridMap(snapshot, new Point(start % width, start / width));
+            List<Point> path = new FrontierSearch().electAndPlan(searched, carNumbers, carid);
+
+            String where = "seed " + seed;
+            if (null == elected.getEnd()) {
+                assertNull(searched.getEnd(), where);
+                assertTrue(path.isEmpty(), where);
+                continue;
+            }
+            int end = elected.getEnd().getIndex();
+            assertTrue(!pocket[end], where + ": elected an unreachable pocket");
+            assertEquals(end, searched.getEnd().getIndex(), where);
+            assertEquals(new Point(end % width, end / width), path.get(path.size() - 1), where);
+            double shortest = TestMaps.shortestDistances(snapshot, start, SQRT2, 0)[end];
+            assertEquals(shortest, TestMaps.pathCost(snapshot, start, path), 1e-6, where);
+
+            //区域内最高分的格子在封闭区域里时，说明封闭区域确实挡住了得分更高的候选
+            if (searched.countUnexploredNeighbors(end) < 9) pocketsWon++;
+        }
+        assertTrue(pocketsWon > 0, "the pockets never held a better-scoring cell");
+    }
+
+    private static void set(byte[] bitmap, int index) {
+        bitmap[index / 8] |= (byte) (1 << (7 - index % 8));
+    }
+
+    private static void clear(byte[] bitmap, int index) {
+        bitmap[index / 8] &= (byte) ~(1 << (7 - index % 8));
+    }
+}
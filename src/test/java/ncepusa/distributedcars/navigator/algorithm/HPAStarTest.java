@@ -0,0 +1,99 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.ClusterGraph;
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.geo.Point;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>HPA*的路径与参考最短距离比较，增量更新的簇图与从头构建的簇图比较</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class HPAStarTest {
+    /**
+     * HPA*只经过过渡点，路径不一定最短，但不能比最短路径短，也不能长出太多
+     */
+    private static final double MAX_DETOUR = 1.5;
+
+    @Test
+    void pathsAreValidAndNearShortest() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            MapSnapshot snapshot = TestMaps.randomSnapshot(random, 20 + random.nextInt(100), 20 + random.nextInt(100),
+                    0.1 + random.nextDouble() * 0.25);
+            int width = snapshot.getWidth();
+            for (int query = 0; query < 50; query++) {
+                int start = TestMaps.randomFreeCell(random, snapshot);
+                int end = TestMaps.randomFreeCell(random, snapshot);
+                double shortest = TestMaps.shortestDistances(snapshot, start, Math.sqrt(2), 0)[end];
+                GridMap map = TestMaps.gridMap(snapshot, start, end);
+                List<Point> path = new HPAStar().planPath(map, map.getStart(), map.getEnd());
+
+                String where = "seed " + seed + " query " + query;
+                if (start == end) continue;
+                assertEquals(Double.isInfinite(shortest), path.isEmpty(), where);
+                if (path.isEmpty()) continue;
+                assertEquals(new Point(end % width, end / width), path.get(path.size() - 1), where);
+                double cost = TestMaps.pathCost(snapshot, start, path);
+                assertTrue(cost >= shortest - 1e-6, where + ": shorter than the reference");
+                assertTrue(cost <= shortest * MAX_DETOUR + 1e-6, where + ": " + cost + " vs " + shortest);
+            }
+        }
+    }
+
+    @Test
+    void updatedGraphMatchesRebuild() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            MapSnapshot snapshot = TestMaps.randomSnapshot(random, 20 + random.nextInt(100), 20 + random.nextInt(100),
+                    0.1 + random.nextDouble() * 0.25);
+            int width = snapshot.getWidth();
+            int height = snapshot.getHeight();
+            for (int round = 0; round < 3; round++) {
+                //先算出一部分簇内距离，增量更新时要么复用要么重新计算
+                ClusterGraph previous = snapshot.getClusterGraph();
+                for (int c = 0; c < clusterCount(previous); c++) {
+                    if (random.nextBoolean() && previous.getCluster(c).size() > 0) previous.getDistances(c, 0);
+                }
+                byte[] obstacles = snapshot.getObstacleMap().clone();
+                for (int i = 1 + random.nextInt(30); i > 0; i--) {
+                    int index = random.nextInt(width * height);
+                    obstacles[index / 8] ^= (byte) (1 << (7 - index % 8));
+                }
+                snapshot = snapshot.next(snapshot.getVersion() + 1, snapshot.getVisitedMap(), obstacles);
+
+                ClusterGraph updated = snapshot.getClusterGraph();
+                ClusterGraph rebuilt = ClusterGraph.build(snapshot.getObstacles(), width, height);
+                String where = "seed " + seed + " round " + round;
+                assertEquals(clusterCount(rebuilt), clusterCount(updated), where);
+                for (int c = 0; c < clusterCount(rebuilt); c++) {
+                    ClusterGraph.Cluster expected = rebuilt.getCluster(c);
+                    ClusterGraph.Cluster actual = updated.getCluster(c);
+                    assertEquals(expected.size(), actual.size(), where + " cluster " + c);
+                    for (int i = 0; i < expected.size(); i++) {
+                        String node = where + " cluster " + c + " node " + i;
+                        assertEquals(expected.getNode(i), actual.getNode(i), node);
+                        assertTrue(Arrays.equals(expected.getPartners(i), actual.getPartners(i)), node + " partners");
+                        assertTrue(Arrays.equals(rebuilt.getDistances(c, i), updated.getDistances(c, i)), node + " distances");
+                    }
+                }
+            }
+        }
+    }
+
+    private static int clusterCount(ClusterGraph graph) {
+        int clustersX = (graph.getWidth() + graph.getClusterWidth() - 1) / graph.getClusterWidth();
+        int clustersY = (graph.getHeight() + graph.getClusterHeight() - 1) / graph.getClusterHeight();
+        return clustersX * clustersY;
+    }
+}
@@ -0,0 +1,80 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.JumpDistanceTable;
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>查表的 {@link JPSPlus} 与扫描地图的 {@link JPS} 比较，跳点和路径都必须完全相同</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class JPSPlusTest {
+    @Test
+    void jumpsMatchJps() {
+        Random random = new Random(16);
+        JPS jps = new JPS();
+        JPSPlus jpsPlus = new JPSPlus();
+        for (int round = 0; round < 30; round++) {
+            MapSnapshot snapshot = TestMaps.randomSnapshot(random, 5 + random.nextInt(150), 5 + random.nextInt(150),
+                    random.nextDouble() * 0.35);
+            int width = snapshot.getWidth();
+            for (int i = 0; i < 300; i++) {
+                int current = TestMaps.randomFreeCell(random, snapshot);
+                int goal = TestMaps.randomFreeCell(random, snapshot);
+                //一部分目标放在同一行、同一列或同一条对角线附近，覆盖查表后按终点修正的分支
+                int shape = random.nextInt(4);
+                if (shape < 3) {
+                    int x = current % width;
+                    int y = current / width;
+                    int step = random.nextInt(Math.max(width, snapshot.getHeight()));
+                    int goalX = shape == 1 ? x : shape == 2 ? x + step * (random.nextBoolean() ? 1 : -1) : random.nextInt(width);
+                    int goalY = shape == 0 ? y : shape == 2 ? y + step * (random.nextBoolean() ? 1 : -1) + random.nextInt(3) - 1
+                            : random.nextInt(snapshot.getHeight());
+                    if (goalX >= 0 && goalX < width && goalY >= 0 && goalY < snapshot.getHeight()
+                            && !snapshot.getObstacles().get(goalY * width + goalX)) {
+                        goal = goalY * width + goalX;
+                    }
+                }
+                GridMap map = TestMaps.gridMap(snapshot, current, goal);
+                for (int direction = 0; direction < 8; direction++) {
+                    assertEquals(jps.jump(map, current, direction, goal), jpsPlus.jump(map, current, direction, goal),
+                            "round " + round + " cell " + current + " direction " + direction + " goal " + goal);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pathsMatchJps() {
+        Random random = new Random(17);
+        for (int round = 0; round < 20; round++) {
+            MapSnapshot snapshot = TestMaps.randomSnapshot(random, 5 + random.nextInt(150), 5 + random.nextInt(150),
+                    random.nextDouble() * 0.35);
+            for (int i = 0; i < 30; i++) {
+                int start = TestMaps.randomFreeCell(random, snapshot);
+                int end = TestMaps.randomFreeCell(random, snapshot);
+                GridMap expected = TestMaps.gridMap(snapshot, start, end);
+                GridMap actual = TestMaps.gridMap(snapshot, start, end);
+                assertEquals(new JPS().planPath(expected, expected.getStart(), expected.getEnd()),
+                        new JPSPlus().planPath(actual, actual.getStart(), actual.getEnd()), "round " + round + " query " + i);
+            }
+        }
+    }
+
+    @Test
+    void tableSizeStaysWithinCap() {
+        assertTrue(JumpDistanceTable.supports(2048, 2048));
+        assertFalse(JumpDistanceTable.supports(2048, 2049));
+        assertFalse(JumpDistanceTable.supports(8192, 8192));
+        assertFalse(JumpDistanceTable.supports(JumpDistanceTable.MAX_SIDE + 1, 1));
+    }
+}
@@ -0,0 +1,104 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.JumpDistanceTable;
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.geo.Point;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * <p>位板上的JPS跳跃与逐格扫描的参考实现比较</p>
+ * <p>地图宽度和高度跨过64，覆盖位板中跨字的扫描</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class JPSTest {
+    /**
+     * 改用位板之前的跳跃：逐格前进，每一格检查目标和强制邻居
+     */
+    private static final class CellScanJPS extends JPS {
+        @Override
+        protected int jump(@NotNull GridMap map, int current, int direction, int goal) {
+            return scan(map, current, JumpDistanceTable.DIRECTIONS[direction][0], JumpDistanceTable.DIRECTIONS[direction][1], goal);
+        }
+
+        private static int scan(@NotNull GridMap map, int current, int dx, int dy, int goal) {
+            while (true) {
+                int newX = map.getX(current) + dx;
+                int newY = map.getY(current) + dy;
+                if (map.isObstacleAt(newX, newY)) return NO_JUMP_POINT;
+                int next = map.toIndex(newX, newY);
+                if (next == goal || map.hasForcedNeighbor(current, dx, dy)) return next;
+                if (dx != 0 && dy != 0) {
+                    if (NO_JUMP_POINT != scan(map, next, dx, 0, goal)) return next;
+                    if (NO_JUMP_POINT != scan(map, next, 0, dy, goal)) return next;
+                }
+                current = next;
+            }
+        }
+    }
+
+    @Test
+    void jumpsMatchCellScan() {
+        Random random = new Random(14);
+        JPS jps = new JPS();
+        CellScanJPS reference = new CellScanJPS();
+        for (int round = 0; round < 30; round++) {
+            MapSnapshot snapshot = TestMaps.randomSnapshot(random, 10 + random.nextInt(190), 10 + random.nextInt(150),
+                    random.nextDouble() * 0.3);
+            int width = snapshot.getWidth();
+            for (int i = 0; i < 300; i++) {
+                int current = TestMaps.randomFreeCell(random, snapshot);
+                int goal = TestMaps.randomFreeCell(random, snapshot);
+                //一部分目标放在同一行或同一列上，覆盖跳跃途中遇到目标的情况
+                if (random.nextBoolean()) {
+                    int candidate = random.nextBoolean()
+                            ? current / width * width + random.nextInt(width)
+                            : random.nextInt(snapshot.getHeight()) * width + current % width;
+                    if (!snapshot.getObstacles().get(candidate)) goal = candidate;
+                }
+                GridMap map = TestMaps.gridMap(snapshot, current, goal);
+                for (int direction = 0; direction < 8; direction++) {
+                    assertEquals(reference.jump(map, current, direction, goal), jps.jump(map, current, direction, goal),
+                            "round " + round + " cell " + current + " direction " + direction + " goal " + goal);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pathsMatchCellScan() {
+        Random random = new Random(15);
+        for (int round = 0; round < 20; round++) {
+            MapSnapshot snapshot = TestMaps.randomSnapshot(random, 10 + random.nextInt(190), 10 + random.nextInt(150),
+                    random.nextDouble() * 0.3);
+            for (int i = 0; i < 20; i++) {
+                int start = TestMaps.randomFreeCell(random, snapshot);
+                int end = TestMaps.randomFreeCell(random, snapshot);
+                GridMap expected = TestMaps.gridMap(snapshot, start, end);
+                GridMap actual = TestMaps.gridMap(snapshot, start, end);
+                assertEquals(new CellScanJPS().planPath(expected, expected.getStart(), expected.getEnd()),
+                        new JPS().planPath(actual, actual.getStart(), actual.getEnd()), "round " + round + " query " + i);
+            }
+        }
+    }
+
+    @Test
+    void longCorridorDoesNotRecurse() {
+        int width = 200_000;
+        int height = 3;
+        byte[] bitmap = new byte[(width * height + 7) / 8];
+        MapSnapshot snapshot = new MapSnapshot(1, width, height, bitmap, bitmap.clone());
+        GridMap map = TestMaps.gridMap(snapshot, width, 2 * width - 1);
+        List<Point> path = new JPS().planPath(map, map.getStart(), map.getEnd());
+        assertEquals(width - 1, path.size());
+        assertEquals(new Point(width - 1, 1), path.get(path.size() - 1));
+    }
+}
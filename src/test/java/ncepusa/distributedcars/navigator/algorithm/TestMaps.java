@@ -0,0 +1,157 @@
+package ncepusa.distributedcars.navigator.algorithm;
+
+import ncepusa.distributedcars.navigator.data_structures.GridMap;
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.data.geo.Point;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>路径规划测试共用的随机地图和路径检查</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+final class TestMaps {
+    private TestMaps() {
+    }
+
+    /**
+     * @return 障碍物按 density 随机分布、没有已探索格子的快照
+     */
+    static @NotNull MapSnapshot randomSnapshot(@NotNull Random random, int width, int height, double density) {
+        return randomSnapshot(random, width, height, density, 0);
+    }
+
+    /**
+     * @return 障碍物按 density、已探索格子按 visitedDensity 随机分布的快照
+     */
+    static @NotNull MapSnapshot randomSnapshot(@NotNull Random random, int width, int height, double density,
+                                               double visitedDensity) {
+        byte[] obstacles = new byte[(width * height + 7) / 8];
+        byte[] visited = new byte[obstacles.length];
+        for (int i = 0; i < width * height; i++) {
+            if (random.nextDouble() < density) obstacles[i / 8] |= (byte) (1 << (7 - i % 8));
+            if (random.nextDouble() < visitedDensity) visited[i / 8] |= (byte) (1 << (7 - i % 8));
+        }
+        return new MapSnapshot(1, width, height, visited, obstacles);
+    }
+
+    /**
+     * @return 随机的空闲格子下标
+     */
+    static int randomFreeCell(@NotNull Random random, @NotNull MapSnapshot snapshot) {
+        int cells = snapshot.getWidth() * snapshot.getHeight();
+        int index;
+        do {
+            index = random.nextInt(cells);
+        } while (snapshot.getObstacles().get(index));
+        return index;
+    }
+
+    static @NotNull GridMap gridMap(@NotNull MapSnapshot snapshot, int start, int end) {
+        int width = snapshot.getWidth();
+        GridMap map = new GridMap(snapshot, new Point(start % width, start / width));
+        map.setEnd(new Point(end % width, end / width));
+        return map;
+    }
+
+    /**
+     * <p>参考实现：用 {@link PriorityQueue} 和过期条目跳过的Dijkstra计算起点到所有格子的最短距离</p>
+     * <p>移动规则按定义单独实现：八方向，斜走时两个相邻的正向格子都不能是障碍物</p>
+     *
+     * @param diagonalCost 斜走一步的代价，为1时得到最少步数
+     * @param visitedPenalty 走进已探索格子的额外代价
+     * @return 每个格子的最短距离，不可达时为无穷大
+     */
+    static @NotNull double[] shortestDistances(@NotNull MapSnapshot snapshot, int source, double diagonalCost,
+                                               double visitedPenalty) {
+        int width = snapshot.getWidth();
+        int height = snapshot.getHeight();
+        double[] distances = new double[width * height];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        distances[source] = 0;
+        PriorityQueue<double[]> queue = new PriorityQueue<>(Comparator.comparingDouble(entry -> entry[0]));
+        queue.add(new double[]{0, source});
+        while (!queue.isEmpty()) {
+            double[] entry = queue.poll();
+            int current = (int) entry[1];
+            if (entry[0] > distances[current]) continue;
+            int x = current % width;
+            int y = current / width;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dx == 0 && dy == 0) continue;
+                    if (isBlocked(snapshot, x + dx, y + dy)) continue;
+                    if (dx != 0 && dy != 0 && (isBlocked(snapshot, x + dx, y) || isBlocked(snapshot, x, y + dy))) continue;
+                    int next = (y + dy) * width + x + dx;
+                    double distance = distances[current] + (dx != 0 && dy != 0 ? diagonalCost : 1)
+                            + (snapshot.getVisited().get(next) ? visitedPenalty : 0);
+                    if (distance < distances[next]) {
+                        distances[next] = distance;
+                        queue.add(new double[]{distance, next});
+                    }
+                }
+            }
+        }
+        return distances;
+    }
+
+    private static boolean isBlocked(@NotNull MapSnapshot snapshot, int x, int y) {
+        return x < 0 || x >= snapshot.getWidth() || y < 0 || y >= snapshot.getHeight()
+                || snapshot.getObstacles().get(y * snapshot.getWidth() + x);
+    }
+
+    /**
+     * 检查路径每一步都走到相邻的空闲格子、斜走时不穿角，并计算移动代价（直走1，斜走√2）
+     *
+     * @param path 不含起点的路径
+     * @return 路径的移动代价
+     */
+    static double pathCost(@NotNull MapSnapshot snapshot, int start, @NotNull List<Point> path) {
+        return pathCost(snapshot, start, path, Math.sqrt(2), 0);
+    }
+
+    /**
+     * 检查路径每一步都走到相邻的空闲格子、斜走时不穿角，并按给定的代价计算路径的代价
+     *
+     * @param path 不含起点的路径
+     * @param diagonalCost 斜走一步的代价
+     * @param visitedPenalty 走进已探索格子的额外代价
+     * @return 路径的代价
+     */
+    static double pathCost(@NotNull MapSnapshot snapshot, int start, @NotNull List<Point> path, double diagonalCost,
+                           double visitedPenalty) {
+        int width = snapshot.getWidth();
+        int x = start % width;
+        int y = start / width;
+        double cost = 0;
+        for (Point point : path) {
+            int nx = (int) point.getX();
+            int ny = (int) point.getY();
+            int dx = Math.abs(nx - x);
+            int dy = Math.abs(ny - y);
+            assertTrue(dx <= 1 && dy <= 1 && dx + dy > 0, "step " + x + "," + y + " -> " + point);
+            assertFalse(snapshot.getObstacles().get(ny * width + nx), "obstacle on path " + point);
+            if (dx == 1 && dy == 1) {
+                assertFalse(snapshot.getObstacles().get(y * width + nx) || snapshot.getObstacles().get(ny * width + x),
+                        "corner cut " + x + "," + y + " -> " + point);
+                cost += diagonalCost;
+            } else {
+                cost += 1;
+            }
+            if (snapshot.getVisited().get(ny * width + nx)) cost += visitedPenalty;
+            x = nx;
+            y = ny;
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,81 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>{@link IndexedMinHeap} 与逐个比较全部条目的参考实现对比</p>
+ * <p>键值取很少的几个值，主键和次键都大量相同，覆盖平局和decrease-key</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class IndexedMinHeapTest {
+    private static final int CAPACITY = 200;
+
+    @Test
+    void randomOperationsMatchReference() {
+        Random random = new Random(11);
+        IndexedMinHeap heap = new IndexedMinHeap(CAPACITY);
+        Map<Integer, double[]> reference = new HashMap<>();
+        for (int step = 0; step < 200_000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                int index = random.nextInt(CAPACITY);
+                double key = random.nextInt(20) * 0.5;
+                double tie = random.nextInt(4);
+                heap.push(index, key, tie);
+                reference.put(index, new double[]{key, tie});
+            } else if (operation < 7) {
+                int index = random.nextInt(CAPACITY);
+                heap.remove(index);
+                reference.remove(index);
+            } else if (operation < 9 && !reference.isEmpty()) {
+                double[] expected = min(reference);
+                assertEquals(expected[0], heap.peekKey(), "step " + step);
+                assertEquals(expected[1], heap.peekTie(), "step " + step);
+                int index = heap.poll();
+                double[] polled = reference.remove(index);
+                assertTrue(null != polled, "step " + step + " polled " + index + " which is not queued");
+                assertEquals(expected[0], polled[0], "step " + step);
+                assertEquals(expected[1], polled[1], "step " + step);
+            } else if (random.nextInt(50) == 0) {
+                heap.clear();
+                reference.clear();
+            }
+            assertEquals(reference.size(), heap.size(), "step " + step);
+            int probe = random.nextInt(CAPACITY);
+            assertEquals(reference.containsKey(probe), heap.contains(probe), "step " + step);
+        }
+    }
+
+    @Test
+    void clearForgetsStalePositions() {
+        IndexedMinHeap heap = new IndexedMinHeap(4);
+        heap.push(3, 1, 0);
+        heap.push(2, 2, 0);
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(3));
+        heap.push(2, 5, 0);
+        heap.push(3, 4, 0);
+        assertEquals(3, heap.poll());
+        assertEquals(2, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    private static double[] min(Map<Integer, double[]> entries) {
+        double[] best = null;
+        for (double[] entry : entries.values()) {
+            if (null == best || entry[0] < best[0] || (entry[0] == best[0] && entry[1] < best[1])) best = entry;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,62 @@
+package ncepusa.distributedcars.navigator.data_structures;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>{@link RadixHeap} 与 {@link PriorityQueue} 对比</p>
+ * <p>入队的代价模拟Dijkstra：上一次出队的代价加上若干个1和√2，出队顺序必须和优先队列一致</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class RadixHeapTest {
+    @Test
+    void monotoneOperationsMatchPriorityQueue() {
+        Random random = new Random(7);
+        RadixHeap heap = new RadixHeap();
+        PriorityQueue<Double> reference = new PriorityQueue<>();
+        List<Double> keys = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            heap.clear();
+            reference.clear();
+            double last = 0;
+            for (int step = 0; step < 20_000; step++) {
+                if (reference.isEmpty() || random.nextInt(3) != 0) {
+                    double key = last + random.nextInt(4) + random.nextInt(3) * Math.sqrt(2);
+                    heap.push(keys.size(), key);
+                    keys.add(key);
+                    reference.add(key);
+                } else {
+                    double expected = reference.poll();
+                    int value = heap.poll();
+                    assertEquals(expected, heap.lastKey(), "round " + round + " step " + step);
+                    assertEquals(expected, keys.get(value).doubleValue(), "round " + round + " step " + step);
+                    last = expected;
+                }
+                assertEquals(reference.size(), heap.size());
+            }
+            while (!reference.isEmpty()) {
+                double expected = reference.poll();
+                assertEquals(expected, keys.get(heap.poll()).doubleValue());
+            }
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    void rejectsKeysBelowLastPolled() {
+        RadixHeap heap = new RadixHeap();
+        heap.push(1, 3.0);
+        heap.poll();
+        assertThrows(IllegalArgumentException.class, () -> heap.push(2, 2.5));
+    }
+}
@@ -0,0 +1,219 @@
+package ncepusa.distributedcars.navigator.message_queue_interaction;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>小车槽位表的并发创建、请求序号的写回检查和同一辆车任务的串行执行</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class CarSlotTableTest {
+    private static final int THREADS = 16;
+
+    @Test
+    void tryPublishRejectsRequestsOlderThanThePublishedOne() {
+        CarSlotTable.CarSlot slot = new CarSlotTable().get(1);
+        long first = slot.begin();
+        long second = slot.begin();
+        long third = slot.begin();
+
+        //第二个请求先规划完，第一个请求的路径已经过时
+        assertTrue(slot.tryPublish(second));
+        assertFalse(slot.tryPublish(first));
+        assertTrue(slot.tryPublish(third));
+        assertFalse(slot.tryPublish(third));
+        assertFalse(slot.tryPublish(second));
+    }
+
+    @Test
+    void concurrentPublishesAlwaysAcceptTheNewestRequest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < 200; round++) {
+                CarSlotTable.CarSlot slot = new CarSlotTable().get(round);
+                long[] sequences = new long[THREADS];
+                for (int i = 0; i < THREADS; i++) sequences[i] = slot.begin();
+                CountDownLatch ready = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int i = 0; i < THREADS; i++) {
+                    long sequence = sequences[i];
+                    results.add(executor.submit(() -> {
+                        ready.await();
+                        return slot.tryPublish(sequence);
+                    }));
+                }
+                ready.countDown();
+                //不管写回的先后顺序如何，最新的请求一定成功，之后同一个序号不能再次写回
+                assertTrue(results.get(THREADS - 1).get(), "round " + round);
+                assertFalse(slot.tryPublish(sequences[THREADS - 1]), "round " + round);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentGetsReturnTheSameSlot() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < 2000; round++) {
+                CarSlotTable table = new CarSlotTable();
+                //同一个块里的两个id，以及另一个块里的id
+                int[] ids = {round, round + 1, round + 64 * 7};
+                CountDownLatch ready = new CountDownLatch(1);
+                List<Future<CarSlotTable.CarSlot[]>> results = new ArrayList<>();
+                for (int i = 0; i < THREADS; i++) {
+                    Callable<CarSlotTable.CarSlot[]> task = () -> {
+                        ready.await();
+                        CarSlotTable.CarSlot[] slots = new CarSlotTable.CarSlot[ids.length];
+                        for (int k = 0; k < ids.length; k++) slots[k] = table.get(ids[k]);
+                        return slots;
+                    };
+                    results.add(executor.submit(task));
+                }
+                ready.countDown();
+                CarSlotTable.CarSlot[] expected = results.get(0).get();
+                for (Future<CarSlotTable.CarSlot[]> result : results) {
+                    CarSlotTable.CarSlot[] slots = result.get();
+                    for (int k = 0; k < ids.length; k++) {
+                        assertTrue(expected[k] == slots[k], "round " + round + " id " + ids[k]);
+                        assertTrue(slots[k] == table.get(ids[k]), "round " + round + " id " + ids[k]);
+                    }
+                }
+                assertFalse(expected[0] == expected[1], "round " + round);
+                assertEquals(1, expected[0].begin(), "round " + round);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 任务在线程池里异步完成，有的正常完成、有的异常完成、有的在 {@code task.get()} 里直接抛出异常，
+     * 每个任务都必须在前一个任务完成之后才开始，返回的future都必须正常完成
+     */
+    @Test
+    void runInOrderRunsTasksInSubmissionOrderDespiteFailures() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Random random = new Random(25);
+            CarSlotTable.CarSlot slot = new CarSlotTable().get(1);
+            List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger overlaps = new AtomicInteger();
+            List<CompletableFuture<Void>> done = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                int task = i;
+                int outcome = random.nextInt(3);
+                long delayMicros = random.nextInt(200);
+                done.add(slot.runInOrder(() -> {
+                    if (running.incrementAndGet() != 1) overlaps.incrementAndGet();
+                    started.add(task);
+                    if (outcome == 2) {
+                        running.decrementAndGet();
+                        throw new IllegalStateException("task " + task + " failed to start");
+                    }
+                    return CompletableFuture.runAsync(() -> {
+                        LockSupport.parkNanos(delayMicros * 1000);
+                        running.decrementAndGet();
+                        if (outcome == 1) throw new IllegalStateException("task " + task + " failed");
+                    }, executor);
+                }));
+            }
+            CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+            assertEquals(0, overlaps.get());
+            assertEquals(done.size(), started.size());
+            for (int i = 0; i < started.size(); i++) {
+                assertEquals(i, started.get(i).intValue());
+            }
+            for (CompletableFuture<Void> future : done) {
+                assertFalse(future.isCompletedExceptionally());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 多个线程同时给同一辆车提交任务，任务之间不能重叠，不同小车之间互不等待
+     */
+    @Test
+    void runInOrderSerializesConcurrentSubmissions() throws Exception {
+        ExecutorService submitters = Executors.newFixedThreadPool(THREADS);
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            CarSlotTable table = new CarSlotTable();
+            CarSlotTable.CarSlot slot = table.get(1);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger overlaps = new AtomicInteger();
+            AtomicInteger finished = new AtomicInteger();
+            CountDownLatch ready = new CountDownLatch(1);
+            List<Future<List<CompletableFuture<Void>>>> submissions = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                submissions.add(submitters.submit(() -> {
+                    ready.await();
+                    List<CompletableFuture<Void>> done = new ArrayList<>();
+                    for (int i = 0; i < 50; i++) {
+                        done.add(slot.runInOrder(() -> {
+                            if (running.incrementAndGet() != 1) overlaps.incrementAndGet();
+                            return CompletableFuture.runAsync(() -> {
+                                finished.incrementAndGet();
+                                running.decrementAndGet();
+                            }, workers);
+                        }));
+                    }
+                    return done;
+                }));
+            }
+
+            //另一辆车的任务一直不完成，不能挡住这辆车
+            CompletableFuture<Void> blocked = new CompletableFuture<>();
+            table.get(2).runInOrder(() -> blocked);
+            CompletableFuture<Void> other = table.get(2).runInOrder(() -> CompletableFuture.completedFuture(null));
+
+            ready.countDown();
+            for (Future<List<CompletableFuture<Void>>> submission : submissions) {
+                for (CompletableFuture<Void> future : submission.get()) {
+                    future.get(30, TimeUnit.SECONDS);
+                }
+            }
+            assertEquals(0, overlaps.get());
+            assertEquals(THREADS * 50, finished.get());
+            assertFalse(other.isDone());
+            blocked.complete(null);
+            other.get(10, TimeUnit.SECONDS);
+        } finally {
+            submitters.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsIdsOutOfRange() {
+        CarSlotTable table = new CarSlotTable();
+        assertThrows(IllegalArgumentException.class, () -> table.get(-1));
+        assertThrows(IllegalArgumentException.class, () -> table.get(CarSlotTable.MAX_CAR_ID + 1));
+        assertTrue(table.get(CarSlotTable.MAX_CAR_ID) == table.get(CarSlotTable.MAX_CAR_ID));
+    }
+}
@@ -0,0 +1,163 @@
+package ncepusa.distributedcars.navigator.redis_interaction;
+
+import ncepusa.distributedcars.navigator.data_structures.MapSnapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.geo.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>用内存中的位图和变更日志代替Redis，检查增量更新的快照与完整读取逐字节一致，以及重叠的读取不会用旧快照覆盖新快照</p>
+ *
+ * @author 0109
+ * @since 2025-06-11
+ */
+class MapSnapshotCacheTest {
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 40;
+
+    /**
+     * 内存中的地图，{@link #getMapRanges(List)} 按 {@code GETRANGE} 的语义截取字节段
+     */
+    private static class FakeRedis extends RedisInteraction {
+        final byte[] visitedMap = new byte[WIDTH * HEIGHT / 8];
+        final byte[] obstacleMap = new byte[WIDTH * HEIGHT / 8];
+        final TreeMap<Long, List<String>> dirtyRanges = new TreeMap<>();
+        int fullReads;
+        int rangeReads;
+
+        FakeRedis() {
+            super(null);
+        }
+
+        @Override
+        public byte[][] getMapBitmaps() {
+            fullReads++;
+            return new byte[][]{visitedMap.clone(), obstacleMap.clone()};
+        }
+
+        @Override
+        public Set<String> getMapDirtyRanges(long fromVersion, long toVersion) {
+            Set<String> entries = new LinkedHashSet<>();
+            dirtyRanges.subMap(fromVersion, false, toVersion, true).values().forEach(entries::addAll);
+            return entries;
+        }
+
+        @Override
+        public List<Object> getMapRanges(List<MapDirtyRange> ranges) {
+            List<Object> values = new ArrayList<>();
+            for (MapDirtyRange range : ranges) {
+                rangeReads++;
+                byte[] bitmap = isObstacleMapKey(range.getKey()) ? obstacleMap : visitedMap;
+                values.add(Arrays.copyOfRange(bitmap, range.getOffset(), range.getEnd()));
+            }
+            return values;
+        }
+
+        /**
+         * 修改一段字节并按版本记入变更日志
+         */
+        void write(long version, String key, int offset, byte[] bytes) {
+            byte[] bitmap = isObstacleMapKey(key) ? obstacleMap : visitedMap;
+            System.arraycopy(bytes, 0, bitmap, offset, bytes.length);
+            dirtyRanges.computeIfAbsent(version, v -> new ArrayList<>()).add(version + ":" + key + ":" + offset + ":" + bytes.length);
+        }
+    }
+
+    private static MapSnapshotCache cache(RedisInteraction redis) throws ReflectiveOperationException {
+        MapSnapshotCache cache = new MapSnapshotCache(redis);
+        var gap = MapSnapshotCache.class.getDeclaredField("maxIncrementalGap");
+        gap.setAccessible(true);
+        gap.setLong(cache, 64);
+        return cache;
+    }
+
+    private static PlanningContext context(Long version) {
+        return new PlanningContext("1", 1, 1, new Point(0, 0), new Point(WIDTH, HEIGHT), 0, version);
+    }
+
+    @Test
+    void patchedSnapshotsMatchFullReads() throws ReflectiveOperationException {
+        Random random = new Random(8);
+        FakeRedis redis = new FakeRedis();
+        MapSnapshotCache cache = cache(redis);
+        long version = 1;
+        assertNotNull(cache.getSnapshot(context(version)));
+        for (int message = 0; message < 300; message++) {
+            //每个版本写几段可能重叠或相邻的字节，同一条消息之间可能跨越多个版本
+            for (int versions = random.nextInt(4); versions > 0; versions--) {
+                version++;
+                for (int writes = 1 + random.nextInt(3); writes > 0; writes--) {
+                    String key = random.nextInt(4) == 0 ? "obstacle_map" : "map";
+                    byte[] bytes = new byte[1 + random.nextInt(4)];
+                    random.nextBytes(bytes);
+                    redis.write(version, key, random.nextInt(redis.visitedMap.length - bytes.length + 1), bytes);
+                }
+            }
+            MapSnapshot snapshot = cache.getSnapshot(context(version));
+            String where = "message " + message;
+            assertNotNull(snapshot, where);
+            assertEquals(version, snapshot.getVersion(), where);
+            assertTrue(Arrays.equals(redis.visitedMap, snapshot.getVisitedMap()), where + " visited map");
+            assertTrue(Arrays.equals(redis.obstacleMap, snapshot.getObstacleMap()), where + " obstacle map");
+        }
+        assertEquals(1, redis.fullReads);
+        assertTrue(redis.rangeReads > 0, "no GETRANGE was issued");
+    }
+
+    @Test
+    void olderLoadDoesNotReplaceNewerSnapshot() throws Exception {
+        CountDownLatch olderReading = new CountDownLatch(1);
+        CountDownLatch newerPublished = new CountDownLatch(1);
+        FakeRedis redis = new FakeRedis() {
+            private boolean first = true;
+
+            @Override
+            public byte[][] getMapBitmaps() {
+                boolean older;
+                synchronized (this) {
+                    older = first;
+                    first = false;
+                }
+                if (older) {
+                    //先开始的读取等后开始的读取发布之后才返回
+                    olderReading.countDown();
+                    try {
+                        assertTrue(newerPublished.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return super.getMapBitmaps();
+            }
+        };
+        MapSnapshotCache cache = cache(redis);
+        AtomicReference<MapSnapshot> olderResult = new AtomicReference<>();
+        Thread olderRequest = new Thread(() -> olderResult.set(cache.getSnapshot(context(5L))));
+        olderRequest.start();
+        assertTrue(olderReading.await(10, TimeUnit.SECONDS));
+
+        MapSnapshot newer = cache.getSnapshot(context(6L));
+        assertNotNull(newer);
+        newerPublished.countDown();
+        olderRequest.join();
+
+        assertEquals(5, olderResult.get().getVersion());
+        MapSnapshot cached = cache.getCachedSnapshot(context(6L));
+        assertNotNull(cached, "the older load replaced the newer snapshot");
+        assertEquals(6, cached.getVersion());
+    }
+}